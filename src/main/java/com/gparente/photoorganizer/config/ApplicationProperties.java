@@ -2,6 +2,10 @@ package com.gparente.photoorganizer.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Properties specific to Photo Organizer.
  * <p>
@@ -11,4 +15,346 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Storage storage = new Storage();
+
+    private final Upload upload = new Upload();
+
+    private final PhotoImport photoImport = new PhotoImport();
+
+    private final Derivatives derivatives = new Derivatives();
+
+    private final Pagination pagination = new Pagination();
+
+    private final Listing listing = new Listing();
+
+    private final Cache cache = new Cache();
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public Upload getUpload() {
+        return upload;
+    }
+
+    public PhotoImport getPhotoImport() {
+        return photoImport;
+    }
+
+    public Derivatives getDerivatives() {
+        return derivatives;
+    }
+
+    public Pagination getPagination() {
+        return pagination;
+    }
+
+    public Listing getListing() {
+        return listing;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Storage of the photo files.
+     */
+    public static class Storage {
+
+        private String basePath = "photos";
+
+        private String legacyPath = "source";
+
+        private int deleteDelaySeconds = 3600;
+
+        public String getBasePath() {
+            return basePath;
+        }
+
+        public void setBasePath(String basePath) {
+            this.basePath = basePath;
+        }
+
+        public String getLegacyPath() {
+            return legacyPath;
+        }
+
+        public void setLegacyPath(String legacyPath) {
+            this.legacyPath = legacyPath;
+        }
+
+        public int getDeleteDelaySeconds() {
+            return deleteDelaySeconds;
+        }
+
+        public void setDeleteDelaySeconds(int deleteDelaySeconds) {
+            this.deleteDelaySeconds = deleteDelaySeconds;
+        }
+    }
+
+    /**
+     * Batch upload of photos: the originals are written in parallel, the photos are saved in batches.
+     */
+    public static class Upload {
+
+        private int poolSize = 4;
+
+        private int batchSize = 50;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Import of the photos of a directory tree on the server.
+     */
+    public static class PhotoImport {
+
+        private int parallelism = 2;
+
+        private int batchSize = 50;
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Generation of the images derived from the uploaded photos, like the thumbnails.
+     */
+    public static class Derivatives {
+
+        private int corePoolSize = 2;
+
+        private int maxPoolSize = 2;
+
+        private int queueCapacity = 500;
+
+        private int retryAfterSeconds = 2;
+
+        private int thumbnailSize = 400;
+
+        private long thumbnailCacheSize = 64 * 1024 * 1024;
+
+        private long thumbnailPackSize = 256 * 1024 * 1024;
+
+        private List<Integer> sizes = new ArrayList<>(Arrays.asList(160, 400, 1024, 2048));
+
+        public int getCorePoolSize() {
+            return corePoolSize;
+        }
+
+        public void setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getThumbnailSize() {
+            return thumbnailSize;
+        }
+
+        public void setThumbnailSize(int thumbnailSize) {
+            this.thumbnailSize = thumbnailSize;
+        }
+
+        public long getThumbnailCacheSize() {
+            return thumbnailCacheSize;
+        }
+
+        public void setThumbnailCacheSize(long thumbnailCacheSize) {
+            this.thumbnailCacheSize = thumbnailCacheSize;
+        }
+
+        public long getThumbnailPackSize() {
+            return thumbnailPackSize;
+        }
+
+        public void setThumbnailPackSize(long thumbnailPackSize) {
+            this.thumbnailPackSize = thumbnailPackSize;
+        }
+
+        public List<Integer> getSizes() {
+            return sizes;
+        }
+
+        public void setSizes(List<Integer> sizes) {
+            this.sizes = sizes;
+        }
+    }
+
+    /**
+     * Counts of the paged listings, cached until a write changes them.
+     */
+    public static class Pagination {
+
+        private int countTimeToLiveSeconds = 300;
+
+        private boolean keepLargeCounts = false;
+
+        private long largeCountThreshold = 100000;
+
+        public int getCountTimeToLiveSeconds() {
+            return countTimeToLiveSeconds;
+        }
+
+        public void setCountTimeToLiveSeconds(int countTimeToLiveSeconds) {
+            this.countTimeToLiveSeconds = countTimeToLiveSeconds;
+        }
+
+        public boolean isKeepLargeCounts() {
+            return keepLargeCounts;
+        }
+
+        public void setKeepLargeCounts(boolean keepLargeCounts) {
+            this.keepLargeCounts = keepLargeCounts;
+        }
+
+        public long getLargeCountThreshold() {
+            return largeCountThreshold;
+        }
+
+        public void setLargeCountThreshold(long largeCountThreshold) {
+            this.largeCountThreshold = largeCountThreshold;
+        }
+    }
+
+    /**
+     * Listings with the thumbnails inline: the thumbnails of a page are read in parallel, on a pool of their own.
+     */
+    public static class Listing {
+
+        private int poolSize = 8;
+
+        private int queueCapacity = 1000;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * Hibernate second level cache: the size and the time to live of the regions of each entity, its collections included,
+     * and of the query results.
+     */
+    public static class Cache {
+
+        private final Region photos = new Region(10000, 3600);
+
+        private final Region tags = new Region(10000, 3600);
+
+        private final Region users = new Region(1000, 3600);
+
+        private final Region authorities = new Region(100, 3600);
+
+        private final Region queries = new Region(1000, 600);
+
+        public Region getPhotos() {
+            return photos;
+        }
+
+        public Region getTags() {
+            return tags;
+        }
+
+        public Region getUsers() {
+            return users;
+        }
+
+        public Region getAuthorities() {
+            return authorities;
+        }
+
+        public Region getQueries() {
+            return queries;
+        }
+
+        public static class Region {
+
+            private long maxEntries;
+
+            private int timeToLiveSeconds;
+
+            public Region(long maxEntries, int timeToLiveSeconds) {
+                this.maxEntries = maxEntries;
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public long getMaxEntries() {
+                return maxEntries;
+            }
+
+            public void setMaxEntries(long maxEntries) {
+                this.maxEntries = maxEntries;
+            }
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+        }
+    }
 }
@@ -3,6 +3,9 @@ package com.gparente.photoorganizer.config;
 import io.github.jhipster.async.ExceptionHandlingAsyncTaskExecutor;
 import io.github.jhipster.config.JHipsterProperties;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
@@ -13,18 +16,28 @@ import org.springframework.scheduling.annotation.*;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
 @EnableScheduling
 public class AsyncConfiguration implements AsyncConfigurer {
 
+    private static final String PROP_METRIC_REG_THUMBNAIL_READS = "thumbnail.reads";
+
     private final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
     private final JHipsterProperties jHipsterProperties;
 
-    public AsyncConfiguration(JHipsterProperties jHipsterProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    private final MetricRegistry metricRegistry;
+
+    public AsyncConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties,
+                              MetricRegistry metricRegistry) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
+        this.metricRegistry = metricRegistry;
     }
 
     @Override
@@ -39,6 +52,81 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * Executor of the photo derivatives generation.
+     * <p>
+     * Decoding and resizing images is CPU and memory heavy, so it runs on a small pool of its own
+     * with a bounded queue, and can't starve the other asynchronous tasks.
+     */
+    @Bean(name = "derivativeTaskExecutor")
+    public ThreadPoolTaskExecutor getDerivativeExecutor() {
+        log.debug("Creating Derivative Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getDerivatives().getCorePoolSize());
+        executor.setMaxPoolSize(applicationProperties.getDerivatives().getMaxPoolSize());
+        executor.setQueueCapacity(applicationProperties.getDerivatives().getQueueCapacity());
+        executor.setThreadNamePrefix("photo-organizer-Derivative-");
+        return executor;
+    }
+
+    /**
+     * Executor of the batch uploads, writing the originals to the photo storage.
+     * <p>
+     * The pool is bounded and has no queue: when all the workers are busy the request thread writes the next file itself,
+     * so a large batch is throttled instead of being rejected.
+     */
+    @Bean(name = "uploadTaskExecutor")
+    public ThreadPoolTaskExecutor getUploadExecutor() {
+        log.debug("Creating Upload Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getUpload().getPoolSize());
+        executor.setMaxPoolSize(applicationProperties.getUpload().getPoolSize());
+        executor.setQueueCapacity(0);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("photo-organizer-Upload-");
+        return executor;
+    }
+
+    /**
+     * Executor of the thumbnail reads of the listings with the thumbnails inline.
+     * <p>
+     * The thumbnails of a page are read in parallel, so a page takes as long as its slowest read and not as the sum
+     * of its reads. When the queue is full the request thread reads the next thumbnail itself.
+     * The depth of the queue, the busy readers, and the time of the reads and of their wait in the queue
+     * are published as the "thumbnail.reads" metrics.
+     */
+    @Bean(name = "thumbnailTaskExecutor")
+    public ThreadPoolTaskExecutor getThumbnailExecutor() {
+        log.debug("Creating Thumbnail Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getListing().getPoolSize());
+        executor.setMaxPoolSize(applicationProperties.getListing().getPoolSize());
+        executor.setQueueCapacity(applicationProperties.getListing().getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("photo-organizer-Thumbnail-");
+
+        Timer wait = metricRegistry.timer(MetricRegistry.name(PROP_METRIC_REG_THUMBNAIL_READS, "wait"));
+        Timer latency = metricRegistry.timer(MetricRegistry.name(PROP_METRIC_REG_THUMBNAIL_READS, "latency"));
+        // The task is decorated when it is queued, so the wait is measured from there
+        executor.setTaskDecorator(task -> {
+            Timer.Context queued = wait.time();
+            return () -> {
+                queued.stop();
+                Timer.Context read = latency.time();
+                try {
+                    task.run();
+                } finally {
+                    read.stop();
+                }
+            };
+        });
+        metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_THUMBNAIL_READS, "queue"),
+            (Gauge<Integer>) () -> executor.getThreadPoolExecutor().getQueue().size());
+        metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_THUMBNAIL_READS, "active"),
+            (Gauge<Integer>) executor::getActiveCount);
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
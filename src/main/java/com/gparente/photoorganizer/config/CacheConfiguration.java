@@ -0,0 +1,94 @@
+package com.gparente.photoorganizer.config;
+
+import com.gparente.photoorganizer.domain.Authority;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.User;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jcache.JCacheGaugeSet;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.expiry.Duration;
+import org.ehcache.expiry.Expirations;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.cache.JCacheManagerCustomizer;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The regions of the Hibernate second level cache, in the JCache cache manager of Ehcache.
+ * <p>
+ * Each region is bounded in entries and expires its entries after a time to live, both set per entity in
+ * "application.cache", and has its statistics published as the "jcache.statistics" gauges. The update timestamps
+ * of the tables, which tell whether a cached query result is still valid, are never evicted.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+
+    private static final String PROP_METRIC_REG_JCACHE_STATISTICS = "jcache.statistics";
+
+    private static final long MAX_UPDATE_TIMESTAMPS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(CacheConfiguration.class);
+
+    private final ApplicationProperties.Cache cache;
+
+    private final MetricRegistry metricRegistry;
+
+    public CacheConfiguration(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        this.cache = applicationProperties.getCache();
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Hibernate only finds the regions created upfront, so the cache manager is created before it starts.
+     */
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor entityManagerFactoryDependsOnCacheManager() {
+        return new EntityManagerFactoryDependsOnPostProcessor("cacheManager");
+    }
+
+    @Bean
+    public JCacheManagerCustomizer cacheManagerCustomizer() {
+        return cm -> {
+            log.debug("Creating the second level cache regions");
+            createCache(cm, Photo.class.getName(), cache.getPhotos());
+            createCache(cm, Photo.class.getName() + ".tags", cache.getPhotos());
+            createCache(cm, Tag.class.getName(), cache.getTags());
+            createCache(cm, User.class.getName(), cache.getUsers());
+            createCache(cm, User.class.getName() + ".authorities", cache.getUsers());
+            createCache(cm, Authority.class.getName(), cache.getAuthorities());
+            createCache(cm, StandardQueryCache.class.getName(), cache.getQueries());
+            createCache(cm, UpdateTimestampsCache.class.getName(), CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(MAX_UPDATE_TIMESTAMPS)));
+
+            // The gauges are read from the statistics of the caches existing when they are registered
+            metricRegistry.register(PROP_METRIC_REG_JCACHE_STATISTICS, new JCacheGaugeSet());
+        };
+    }
+
+    private static void createCache(CacheManager cm, String name, ApplicationProperties.Cache.Region region) {
+        createCache(cm, name, CacheConfigurationBuilder
+            .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(region.getMaxEntries()))
+            .withExpiry(Expirations.timeToLiveExpiration(Duration.of(region.getTimeToLiveSeconds(), TimeUnit.SECONDS))));
+    }
+
+    private static void createCache(CacheManager cm, String name, CacheConfigurationBuilder<Object, Object> configuration) {
+        // The cache manager of the platform is shared by the application contexts of a same JVM, like those of the tests
+        if (cm.getCache(name) == null) {
+            cm.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(configuration.build()));
+        }
+        cm.enableStatistics(name, true);
+    }
+}
@@ -0,0 +1,85 @@
+package com.gparente.photoorganizer.config.liquibase;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Liquibase change filling the "tag_closure" table from the parents of the existing tags.
+ * <p>
+ * The databases have no recursive queries in common, so the tree is walked in memory: the tags are only
+ * an id and the id of their parent, and each tag is written with the chain of its ancestors.
+ */
+public class TagClosureInitialization implements CustomTaskChange {
+
+    private static final int BATCH_SIZE = 500;
+
+    private int rows;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        JdbcConnection connection = (JdbcConnection) database.getConnection();
+        try {
+            Map<Long, Long> parents = new HashMap<>();
+            try (Statement select = connection.createStatement();
+                 ResultSet tags = select.executeQuery("select id, parent_tag_id from tag")) {
+                while (tags.next()) {
+                    long parentId = tags.getLong(2);
+                    parents.put(tags.getLong(1), tags.wasNull() ? null : parentId);
+                }
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                "insert into tag_closure (ancestor_id, descendant_id, depth) values (?, ?, ?)")) {
+                for (Long id : parents.keySet()) {
+                    Set<Long> visited = new HashSet<>();
+                    Long ancestor = id;
+                    int depth = 0;
+                    // A cycle in the parents, which the application never makes, would stop at the first tag met twice
+                    while (ancestor != null && visited.add(ancestor)) {
+                        insert.setLong(1, ancestor);
+                        insert.setLong(2, id);
+                        insert.setInt(3, depth++);
+                        insert.addBatch();
+                        if (++rows % BATCH_SIZE == 0) {
+                            insert.executeBatch();
+                        }
+                        ancestor = parents.get(ancestor);
+                    }
+                }
+                insert.executeBatch();
+            }
+        } catch (Exception e) {
+            throw new CustomChangeException("Error in filling the tag closure", e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Tag closure filled with " + rows + " rows";
+    }
+
+    @Override
+    public void setUp() {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+}
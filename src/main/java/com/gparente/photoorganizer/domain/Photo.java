@@ -1,7 +1,10 @@
 package com.gparente.photoorganizer.domain;
 
 
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
 import com.gparente.photoorganizer.service.dto.PhotoDTO;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -16,12 +19,15 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "photo")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class Photo implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "photoIdGenerator")
+    @TableGenerator(name = "photoIdGenerator", table = "id_generator", pkColumnName = "sequence_name",
+        valueColumnName = "next_val", pkColumnValue = "photo", allocationSize = 50)
     private Long id;
 
     @Column(name = "file_name")
@@ -36,10 +42,18 @@ public class Photo implements Serializable {
     @Column(name = "date_created")
     private Instant dateCreated;
 
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "derivative_status", length = 16)
+    private DerivativeStatus derivativeStatus;
+
     @ManyToMany(cascade = CascadeType.DETACH)
     @JoinTable(name = "photo_tags",
                joinColumns = @JoinColumn(name="photos_id", referencedColumnName="id"),
                inverseJoinColumns = @JoinColumn(name="tags_id", referencedColumnName="id"))
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
     private Set<Tag> tags = new HashSet<>();
 
     @ManyToOne
@@ -53,6 +67,8 @@ public class Photo implements Serializable {
         this.path = photoDTO.getPath();
         this.type = photoDTO.getType();
         this.dateCreated = photoDTO.getDateCreated();
+        this.contentHash = photoDTO.getContentHash();
+        this.derivativeStatus = photoDTO.getDerivativeStatus();
         this.tags = photoDTO.getTags();
         this.user = photoDTO.getUser();
     }
@@ -118,6 +134,32 @@ public class Photo implements Serializable {
         this.dateCreated = dateCreated;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public Photo contentHash(String contentHash) {
+        this.contentHash = contentHash;
+        return this;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public DerivativeStatus getDerivativeStatus() {
+        return derivativeStatus;
+    }
+
+    public Photo derivativeStatus(DerivativeStatus derivativeStatus) {
+        this.derivativeStatus = derivativeStatus;
+        return this;
+    }
+
+    public void setDerivativeStatus(DerivativeStatus derivativeStatus) {
+        this.derivativeStatus = derivativeStatus;
+    }
+
     public Set<Tag> getTags() {
         return tags;
     }
@@ -185,6 +227,8 @@ public class Photo implements Serializable {
             ", path='" + getPath() + "'" +
             ", type='" + getType() + "'" +
             ", dateCreated='" + getDateCreated() + "'" +
+            ", contentHash='" + getContentHash() + "'" +
+            ", derivativeStatus='" + getDerivativeStatus() + "'" +
             "}";
     }
 }
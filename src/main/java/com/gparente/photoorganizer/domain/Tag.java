@@ -1,6 +1,8 @@
 package com.gparente.photoorganizer.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -14,12 +16,15 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "tag")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class Tag implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "tagIdGenerator")
+    @TableGenerator(name = "tagIdGenerator", table = "id_generator", pkColumnName = "sequence_name",
+        valueColumnName = "next_val", pkColumnValue = "tag", allocationSize = 50)
     private Long id;
 
     @Column(name = "name")
@@ -28,6 +33,9 @@ public class Tag implements Serializable {
     @Column(name = "jhi_type")
     private String type;
 
+    /**
+     * Not cached: the inverse side of the tags of the photos is not invalidated when they change, and holds every photo of the tag.
+     */
     @ManyToMany(mappedBy = "tags", cascade = CascadeType.DETACH)
     private Set<Photo> photos = new HashSet<>();
 
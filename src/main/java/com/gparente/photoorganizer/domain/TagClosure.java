@@ -0,0 +1,100 @@
+package com.gparente.photoorganizer.domain;
+
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A path of the tag tree, from a tag to one of its descendants, or to itself at depth 0.
+ * <p>
+ * Read only, the paths are written by the TagClosureListener along with the tags.
+ */
+@Entity
+@Immutable
+@Table(name = "tag_closure")
+@IdClass(TagClosure.Key.class)
+public class TagClosure implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "ancestor_id")
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id")
+    private Long descendantId;
+
+    @Column(name = "depth")
+    private Integer depth;
+
+    public Long getAncestorId() {
+        return ancestorId;
+    }
+
+    public Long getDescendantId() {
+        return descendantId;
+    }
+
+    public Integer getDepth() {
+        return depth;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TagClosure tagClosure = (TagClosure) o;
+        return Objects.equals(ancestorId, tagClosure.ancestorId) && Objects.equals(descendantId, tagClosure.descendantId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ancestorId, descendantId);
+    }
+
+    @Override
+    public String toString() {
+        return "TagClosure{" +
+            "ancestorId=" + ancestorId +
+            ", descendantId=" + descendantId +
+            ", depth=" + depth +
+            "}";
+    }
+
+    /**
+     * The key of a path, its ancestor and its descendant.
+     */
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long ancestorId;
+
+        private Long descendantId;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(ancestorId, key.ancestorId) && Objects.equals(descendantId, key.descendantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ancestorId, descendantId);
+        }
+    }
+}
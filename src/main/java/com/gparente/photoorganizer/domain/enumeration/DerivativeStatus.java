@@ -0,0 +1,10 @@
+package com.gparente.photoorganizer.domain.enumeration;
+
+/**
+ * The DerivativeStatus enumeration.
+ * <p>
+ * The state of the images derived from a photo, like its thumbnail, which are generated in background after the upload.
+ */
+public enum DerivativeStatus {
+    PENDING, READY, FAILED
+}
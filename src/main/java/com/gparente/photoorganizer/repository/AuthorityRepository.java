@@ -3,9 +3,17 @@ package com.gparente.photoorganizer.repository;
 import com.gparente.photoorganizer.domain.Authority;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import javax.persistence.QueryHint;
+import java.util.List;
 
 /**
  * Spring Data JPA repository for the Authority entity.
  */
 public interface AuthorityRepository extends JpaRepository<Authority, String> {
+
+    @Override
+    @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
+    List<Authority> findAll();
 }
@@ -0,0 +1,168 @@
+package com.gparente.photoorganizer.repository;
+
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hook on the writes of the tags and of the photos, whatever the code which makes them.
+ * <p>
+ * The Hibernate events are registered once, and dispatched to the {@link EntityWriteListener}s of the components
+ * which keep something in sync with the tags and the photos, like a table, a cache or a snapshot. A cache of what
+ * is read from the database is dropped with {@link #nowAndAfterTransaction}, so that it is never read back from
+ * a write not committed yet.
+ */
+@Component
+public class EntityWriteEvents {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final List<EntityWriteListener> listeners = new CopyOnWriteArrayList<>();
+
+    public EntityWriteEvents(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry().getService(EventListenerRegistry.class);
+        Dispatcher dispatcher = new Dispatcher();
+        registry.appendListeners(EventType.POST_INSERT, dispatcher);
+        registry.appendListeners(EventType.POST_UPDATE, dispatcher);
+        registry.appendListeners(EventType.POST_DELETE, dispatcher);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, dispatcher);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, dispatcher);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, dispatcher);
+    }
+
+    /**
+     * Add a listener of the writes of the tags and of the photos.
+     *
+     * @param listener the listener
+     */
+    public void addListener(EntityWriteListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Run an action now and once the transaction of a write is over, committed or not.
+     *
+     * @param session the session of the write
+     * @param action the action, like dropping a cache
+     */
+    public static void nowAndAfterTransaction(EventSource session, Runnable action) {
+        action.run();
+        session.getActionQueue().registerProcess((success, completedSession) -> action.run());
+    }
+
+    /**
+     * Run an action now and once the current transaction is over, if any, for the bulk statements which Hibernate doesn't see.
+     *
+     * @param action the action, like dropping a cache
+     */
+    public static void nowAndAfterTransaction(Runnable action) {
+        action.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static boolean isTracked(Object entity) {
+        return entity instanceof Tag || entity instanceof Photo;
+    }
+
+    /**
+     * Calls the listeners on the writes of the tags and of the photos.
+     */
+    private final class Dispatcher implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (isTracked(event.getEntity())) {
+                listeners.forEach(listener -> listener.onInsert(event));
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (isTracked(event.getEntity())) {
+                listeners.forEach(listener -> listener.onUpdate(event));
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (isTracked(event.getEntity())) {
+                listeners.forEach(listener -> listener.onDelete(event));
+            }
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+
+        /**
+         * Still abstract in Hibernate 5.2, so implemented along with its replacement.
+         */
+        @Override
+        @SuppressWarnings("deprecation")
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return this.requiresPostCommitHandling(persister);
+        }
+
+        private void onCollectionChange(AbstractCollectionEvent event) {
+            if (isTracked(event.getAffectedOwnerOrNull())) {
+                listeners.forEach(listener -> listener.onCollectionChange(event));
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.gparente.photoorganizer.repository;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+
+/**
+ * Listener of the writes of the tags and of the photos, added to the {@link EntityWriteEvents}.
+ * <p>
+ * The methods are called as soon as a write is flushed, in its transaction, for a tag or a photo only.
+ */
+public interface EntityWriteListener {
+
+    default void onInsert(PostInsertEvent event) {
+    }
+
+    default void onUpdate(PostUpdateEvent event) {
+    }
+
+    default void onDelete(PostDeleteEvent event) {
+    }
+
+    /**
+     * The tags of a photo are created, changed or removed, seen from either side.
+     *
+     * @param event the event of the collection, owned by a tag or a photo
+     */
+    default void onCollectionChange(AbstractCollectionEvent event) {
+    }
+}
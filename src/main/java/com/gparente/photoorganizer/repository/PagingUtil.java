@@ -0,0 +1,75 @@
+package com.gparente.photoorganizer.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Utility class for paging entities with their collections in two phases.
+ * <p>
+ * A "join fetch" of a collection can't be paged by the database, Hibernate would load every row and page them
+ * in memory (HHH000104). So a page of ids is selected first, then the entities of these ids are fetched with
+ * their collections.
+ */
+final class PagingUtil {
+
+    private static final String ID = "id";
+
+    private PagingUtil() {
+    }
+
+    /**
+     * Add the id as the last sort key, so that the order of a page is stable and two pages never overlap.
+     *
+     * @param pageable the pagination information
+     * @return the pagination information, ordered by id in the end
+     */
+    static Pageable withIdOrder(Pageable pageable) {
+        Sort sort = pageable.getSort();
+        if (sort != null && sort.getOrderFor(ID) != null) {
+            return pageable;
+        }
+        Sort idSort = new Sort(ID);
+        return new PageRequest(pageable.getPageNumber(), pageable.getPageSize(), sort == null ? idSort : sort.and(idSort));
+    }
+
+    /**
+     * Replace the ids of a page by the page of their entities.
+     * <p>
+     * The total is only asked when it can't be told from the page, as by the count queries of Spring Data.
+     * The entities deleted between the two queries are left out of the page, which is then shorter than its size;
+     * the total, counted with them, is not corrected.
+     *
+     * @param ids the ids of the page
+     * @param pageable the pagination information of the page
+     * @param total the total number of entities
+     * @param fetch the query of the entities of some ids
+     * @param getId the id of an entity
+     * @param <T> the type of the entities
+     * @return the page of the entities, in the order of the ids
+     */
+    static <T> Page<T> toEntities(List<Long> ids, Pageable pageable, LongSupplier total,
+                                  Function<List<Long>, List<T>> fetch, Function<T, Long> getId) {
+        Page<Long> page = PageableExecutionUtils.getPage(ids, pageable, total::getAsLong);
+        if (!page.hasContent()) {
+            return page.map(id -> null);
+        }
+        Map<Long, T> entities = fetch.apply(ids).stream()
+            .collect(Collectors.toMap(getId, Function.identity()));
+        List<T> content = ids.stream()
+            .map(entities::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, page.getTotalElements());
+    }
+}
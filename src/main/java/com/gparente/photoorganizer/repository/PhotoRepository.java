@@ -2,15 +2,21 @@ package com.gparente.photoorganizer.repository;
 
 import com.gparente.photoorganizer.domain.Photo;
 import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
 import com.gparente.photoorganizer.service.dto.PhotoDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
 import java.util.List;
 import java.util.Set;
+import java.util.function.LongSupplier;
 
 /**
  * Spring Data JPA repository for the Photo entity.
@@ -25,17 +31,126 @@ public interface PhotoRepository extends JpaRepository<Photo, Long> {
     @Query("select distinct photo from Photo photo left join fetch photo.tags")
     List<Photo> findAllWithEagerRelationships();
 
-    @Query(
-        value = "select distinct photo from Photo photo left join fetch photo.tags",
-        countQuery = "select count(distinct photo) from Photo photo"
-    )
-    Page<Photo> findAllWithEagerRelationships(Pageable pageable);
+    /**
+     * Get a page of photos with their tags, paged by the database in two phases.
+     *
+     * @param pageable the pagination information
+     * @return the page of photos
+     */
+    default Page<Photo> findAllWithEagerRelationships(Pageable pageable) {
+        return this.findAllWithEagerRelationships(pageable, this::count);
+    }
+
+    /**
+     * Get a page of photos with their tags, paged by the database in two phases.
+     *
+     * @param pageable the pagination information
+     * @param total the number of photos, only asked when it can't be told from the page
+     * @return the page of photos
+     */
+    default Page<Photo> findAllWithEagerRelationships(Pageable pageable, LongSupplier total) {
+        Pageable idPageable = PagingUtil.withIdOrder(pageable);
+        return PagingUtil.toEntities(this.findAllIds(idPageable), idPageable, total,
+            this::findAllWithEagerRelationshipsByIdIn, Photo::getId);
+    }
+
+    /**
+     * Get a page of the photos of a tag with their tags, paged by the database in two phases.
+     *
+     * @param tag the tag
+     * @param pageable the pagination information
+     * @return the page of photos
+     */
+    default Page<Photo> findAllByTagWithEagerRelationships(Tag tag, Pageable pageable) {
+        return this.findAllByTagWithEagerRelationships(tag, pageable, () -> this.countByTag(tag));
+    }
+
+    /**
+     * Get a page of the photos of a tag with their tags, paged by the database in two phases.
+     *
+     * @param tag the tag
+     * @param pageable the pagination information
+     * @param total the number of photos of the tag, only asked when it can't be told from the page
+     * @return the page of photos
+     */
+    default Page<Photo> findAllByTagWithEagerRelationships(Tag tag, Pageable pageable, LongSupplier total) {
+        Pageable idPageable = PagingUtil.withIdOrder(pageable);
+        return PagingUtil.toEntities(this.findAllIdsByTag(tag, idPageable), idPageable, total,
+            this::findAllWithEagerRelationshipsByIdIn, Photo::getId);
+    }
+
+    /**
+     * Get a page of the photos of a tag and of all its descendants with their tags, paged by the database in two phases.
+     * <p>
+     * The descendants are read from the "tag_closure" table in the same statement, and a photo of several tags
+     * of the subtree is listed once.
+     *
+     * @param tag the tag at the top of the subtree
+     * @param pageable the pagination information
+     * @param total the number of photos of the subtree, only asked when it can't be told from the page
+     * @return the page of photos
+     */
+    default Page<Photo> findAllBySubtreeWithEagerRelationships(Tag tag, Pageable pageable, LongSupplier total) {
+        Pageable idPageable = PagingUtil.withIdOrder(pageable);
+        return PagingUtil.toEntities(this.findAllIdsBySubtree(tag.getId(), idPageable), idPageable, total,
+            this::findAllWithEagerRelationshipsByIdIn, Photo::getId);
+    }
+
+    @Query("select photo.id from Photo photo")
+    List<Long> findAllIds(Pageable pageable);
+
+    @Query("select photo.id from Photo photo where :tag member of photo.tags")
+    List<Long> findAllIdsByTag(@Param("tag") Tag tag, Pageable pageable);
+
+    @Query("select count(photo) from Photo photo where :tag member of photo.tags")
+    long countByTag(@Param("tag") Tag tag);
+
+    @Query("select photo.id from Photo photo where photo.id in (select tagged.id from Photo tagged join tagged.tags tag, " +
+        "TagClosure closure where closure.descendantId = tag.id and closure.ancestorId = :ancestorId)")
+    List<Long> findAllIdsBySubtree(@Param("ancestorId") Long ancestorId, Pageable pageable);
+
+    @Query("select count(photo) from Photo photo where photo.id in (select tagged.id from Photo tagged join tagged.tags tag, " +
+        "TagClosure closure where closure.descendantId = tag.id and closure.ancestorId = :ancestorId)")
+    long countBySubtree(@Param("ancestorId") Long ancestorId);
 
+    @Query("select photo.id from Photo photo where photo.dateCreated is not null order by photo.dateCreated desc, photo.id desc")
+    List<Long> findTimelineIds(Pageable pageable);
+
+    @Query("select photo.id from Photo photo where photo.dateCreated < :dateCreated " +
+        "or (photo.dateCreated = :dateCreated and photo.id < :id) order by photo.dateCreated desc, photo.id desc")
+    List<Long> findTimelineIdsAfter(@Param("dateCreated") Instant dateCreated, @Param("id") Long id, Pageable pageable);
+
+    @Query("select photo.id from Photo photo where photo.dateCreated is null order by photo.id desc")
+    List<Long> findUndatedTimelineIds(Pageable pageable);
+
+    @Query("select photo.id from Photo photo where photo.dateCreated is null and photo.id < :id order by photo.id desc")
+    List<Long> findUndatedTimelineIdsAfter(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Get the photos which only have tags of a subtree, and so are left without tags when the subtree is deleted.
+     *
+     * @param ancestorId the id of the tag at the top of the subtree
+     * @return the photos of the subtree without any other tag, their tags not loaded
+     */
+    @Query("select photo from Photo photo where photo.id in (select tagged.id from Photo tagged join tagged.tags tag, " +
+        "TagClosure closure where closure.descendantId = tag.id and closure.ancestorId = :ancestorId) " +
+        "and not exists (select kept.id from Photo kept join kept.tags keptTag where kept = photo and keptTag.id not in " +
+        "(select subtree.descendantId from TagClosure subtree where subtree.ancestorId = :ancestorId))")
+    List<Photo> findAllOnlyInSubtree(@Param("ancestorId") Long ancestorId);
+
+    @Modifying
     @Query(
-        value = "select distinct photo from Photo photo where :tag member of photo.tags",
-        countQuery = "select count(distinct photo) from Photo photo where :tag member of photo.tags"
+        value = "delete from photo_tags where tags_id in (select descendant_id from tag_closure where ancestor_id = :ancestorId)",
+        nativeQuery = true
     )
-    Page<Photo> findAllByTagWithEagerRelationships(@Param("tag") Tag tag, Pageable pageable);
+    int deleteTagsOfSubtree(@Param("ancestorId") Long ancestorId);
+
+    @Modifying
+    @Query("delete from Photo photo where photo.id in :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
+
+    @Query("select distinct photo from Photo photo left join fetch photo.tags where photo.id in :ids")
+    List<Photo> findAllWithEagerRelationshipsByIdIn(@Param("ids") List<Long> ids);
 
     @Query("select distinct photo from Photo photo left join fetch photo.tags where :tag member of photo.tags")
     Set<Photo> findAllByTagWithEagerRelationships(@Param("tag") Tag tag);
@@ -43,4 +158,36 @@ public interface PhotoRepository extends JpaRepository<Photo, Long> {
     @Query("select photo from Photo photo left join fetch photo.tags where photo.id =:id")
     Photo findOneWithEagerRelationships(@Param("id") Long id);
 
+    @Query("select photo.id from Photo photo where photo.derivativeStatus = :status and photo.id > :afterId order by photo.id")
+    List<Long> findIdsByDerivativeStatus(@Param("status") DerivativeStatus status, @Param("afterId") Long afterId, Pageable pageable);
+
+    List<Photo> findAllByPathIsNull();
+
+    long countByPath(String path);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select photo from Photo photo where photo.id = :id")
+    Photo findOneForUpdate(@Param("id") Long id);
+
+    /**
+     * Set the derivative status of a photo, unless its image was replaced meanwhile.
+     * <p>
+     * The photo is locked while its content hash is checked, and updated as an entity: the second level cache
+     * drops this photo only, where a bulk update would drop all the cached photos and their tags.
+     *
+     * @param id the id of the photo
+     * @param contentHash the content hash of the image of the derivatives
+     * @param status the derivative status
+     * @return 1 if the status is updated, 0 if the photo is deleted or has another image
+     */
+    @Transactional
+    default int updateDerivativeStatus(Long id, String contentHash, DerivativeStatus status) {
+        Photo photo = this.findOneForUpdate(id);
+        if (photo == null || contentHash == null || !contentHash.equals(photo.getContentHash())) {
+            return 0;
+        }
+        photo.setDerivativeStatus(status);
+        return 1;
+    }
+
 }
@@ -0,0 +1,127 @@
+package com.gparente.photoorganizer.repository;
+
+import com.gparente.photoorganizer.domain.Tag;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Maintains the "tag_closure" table along with the tags, whatever the code which writes them.
+ * <p>
+ * The table has a row for each tag and each of its ancestors, the tag itself included at depth 0.
+ * The rows are written on the connection of the session, in the transaction of the tag: a created tag gets the rows
+ * of its parent one level deeper, a moved tag takes its subtree from its old ancestors to its new ones, a deleted tag
+ * drops its rows.
+ */
+@Component
+public class TagClosureListener implements EntityWriteListener {
+
+    private static final String PARENT_TAG = "parentTag";
+
+    private final EntityWriteEvents entityWriteEvents;
+
+    public TagClosureListener(EntityWriteEvents entityWriteEvents) {
+        this.entityWriteEvents = entityWriteEvents;
+    }
+
+    @PostConstruct
+    public void register() {
+        entityWriteEvents.addListener(this);
+    }
+
+    @Override
+    public void onInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Tag) {
+            Tag tag = (Tag) event.getEntity();
+            Long parentId = getId(tag.getParentTag());
+            event.getSession().doWork(connection -> insertPaths(connection, (Long) event.getId(), parentId));
+        }
+    }
+
+    @Override
+    public void onUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Tag) {
+            int parentTag = event.getPersister().getEntityMetamodel().getPropertyIndex(PARENT_TAG);
+            Long parentId = getId((Tag) event.getState()[parentTag]);
+            // Without the old state, as for a detached tag updated without being read, the tag is moved anyway
+            if (event.getOldState() == null || !Objects.equals(getId((Tag) event.getOldState()[parentTag]), parentId)) {
+                event.getSession().doWork(connection -> movePaths(connection, (Long) event.getId(), parentId));
+            }
+        }
+    }
+
+    @Override
+    public void onDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Tag) {
+            event.getSession().doWork(connection -> deletePaths(connection, (Long) event.getId()));
+        }
+    }
+
+    private static Long getId(Tag tag) {
+        return tag == null ? null : tag.getId();
+    }
+
+    private static void insertPaths(Connection connection, Long id, Long parentId) throws SQLException {
+        try (PreparedStatement self = connection.prepareStatement(
+            "insert into tag_closure (ancestor_id, descendant_id, depth) values (?, ?, 0)")) {
+            self.setLong(1, id);
+            self.setLong(2, id);
+            self.executeUpdate();
+        }
+        if (parentId != null) {
+            try (PreparedStatement ancestors = connection.prepareStatement(
+                "insert into tag_closure (ancestor_id, descendant_id, depth) " +
+                    "select ancestor_id, ?, depth + 1 from tag_closure where descendant_id = ?")) {
+                ancestors.setLong(1, id);
+                ancestors.setLong(2, parentId);
+                ancestors.executeUpdate();
+            }
+        }
+    }
+
+    private static void movePaths(Connection connection, Long id, Long parentId) throws SQLException {
+        // The ancestors of a tag of the subtree deeper than the tag itself are the old ancestors of the subtree
+        try (PreparedStatement subtree = connection.prepareStatement(
+            "select descendant_id, depth from tag_closure where ancestor_id = ?");
+             PreparedStatement delete = connection.prepareStatement(
+                 "delete from tag_closure where descendant_id = ? and depth > ?")) {
+            subtree.setLong(1, id);
+            try (ResultSet descendants = subtree.executeQuery()) {
+                while (descendants.next()) {
+                    delete.setLong(1, descendants.getLong(1));
+                    delete.setInt(2, descendants.getInt(2));
+                    delete.addBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+        if (parentId != null) {
+            try (PreparedStatement insert = connection.prepareStatement(
+                "insert into tag_closure (ancestor_id, descendant_id, depth) " +
+                    "select supertree.ancestor_id, subtree.descendant_id, supertree.depth + subtree.depth + 1 " +
+                    "from tag_closure supertree, tag_closure subtree where supertree.descendant_id = ? and subtree.ancestor_id = ?")) {
+                insert.setLong(1, parentId);
+                insert.setLong(2, id);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    private static void deletePaths(Connection connection, Long id) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement(
+            "delete from tag_closure where descendant_id = ? or ancestor_id = ?")) {
+            delete.setLong(1, id);
+            delete.setLong(2, id);
+            delete.executeUpdate();
+        }
+    }
+}
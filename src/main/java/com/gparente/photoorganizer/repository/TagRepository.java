@@ -9,7 +9,9 @@ import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.LongSupplier;
 
 /**
  * Spring Data JPA repository for the Tag entity.
@@ -27,22 +29,100 @@ public interface TagRepository extends JpaRepository<Tag, Long> {
     @Query("select tag from Tag tag where tag.user.login = ?#{principal.username}")
     List<Tag> findByUserIsCurrentUser();
 
-    @Query(
-        value = "select distinct tag from Tag tag left join fetch tag.photos",
-        countQuery = "select count(distinct tag) from Tag tag"
-    )
-    Page<Tag> findAllWithEagerRelationships(Pageable pageable);
+    /**
+     * Get a page of tags with their photos, paged by the database in two phases.
+     *
+     * @param pageable the pagination information
+     * @return the page of tags
+     */
+    default Page<Tag> findAllWithEagerRelationships(Pageable pageable) {
+        return this.findAllWithEagerRelationships(pageable, this::count);
+    }
+
+    /**
+     * Get a page of tags with their photos, paged by the database in two phases.
+     *
+     * @param pageable the pagination information
+     * @param total the number of tags, only asked when it can't be told from the page
+     * @return the page of tags
+     */
+    default Page<Tag> findAllWithEagerRelationships(Pageable pageable, LongSupplier total) {
+        Pageable idPageable = PagingUtil.withIdOrder(pageable);
+        return PagingUtil.toEntities(this.findAllIds(idPageable), idPageable, total,
+            this::findAllWithEagerRelationshipsByIdIn, Tag::getId);
+    }
+
+    @Query("select tag.id from Tag tag")
+    List<Long> findAllIds(Pageable pageable);
+
+    @Query("select distinct tag from Tag tag left join fetch tag.photos where tag.id in :ids")
+    List<Tag> findAllWithEagerRelationshipsByIdIn(@Param("ids") List<Long> ids);
 
     @Query("select tag.parentTag from Tag tag where tag = :tag")
     Tag findParentOfTag(@Param("tag") Tag tag);
 
+    /**
+     * Get a tag and all its descendants, from the "tag_closure" table.
+     *
+     * @param id the id of the tag
+     * @return the tag then its descendants, the nearest first
+     */
+    @Query(
+        value = "select tag.* from tag tag join tag_closure closure on closure.descendant_id = tag.id " +
+            "where closure.ancestor_id = :id order by closure.depth, tag.id",
+        nativeQuery = true
+    )
+    List<Tag> findSubtree(@Param("id") Long id);
+
+    /**
+     * Get the ancestors of a tag, from the "tag_closure" table.
+     *
+     * @param id the id of the tag
+     * @return the ancestors of the tag, its parent first
+     */
+    @Query(
+        value = "select tag.* from tag tag join tag_closure closure on closure.ancestor_id = tag.id " +
+            "where closure.descendant_id = :id and closure.depth > 0 order by closure.depth",
+        nativeQuery = true
+    )
+    List<Tag> findAncestors(@Param("id") Long id);
+
     @Query("select distinct tag from Tag tag where tag.parentTag = :tag")
     Set<Tag> findSonsOfTag(@Param("tag") Tag tag);
 
     @Query("select tag from Tag tag where tag.name = 'ROOT'")
     Tag findRootTag();
 
+    @Query("select closure.descendantId from TagClosure closure where closure.ancestorId = :id")
+    List<Long> findSubtreeIds(@Param("id") Long id);
+
+    /**
+     * Unlink the tags of a subtree from their parents, so that they can be deleted in any order.
+     *
+     * @param id the id of the tag at the top of the subtree
+     * @return the number of tags unlinked
+     */
+    @Modifying
+    @Query("update Tag tag set tag.parentTag = null " +
+        "where tag.id in (select closure.descendantId from TagClosure closure where closure.ancestorId = :id)")
+    int unlinkSubtree(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from Tag tag where tag.id in (select closure.descendantId from TagClosure closure where closure.ancestorId = :id)")
+    int deleteSubtree(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "delete from tag_closure where descendant_id in :ids", nativeQuery = true)
+    int deleteClosureOf(@Param("ids") List<Long> ids);
+
+    @Query("select tag from Tag tag left join fetch tag.user")
+    List<Tag> findAllWithUser();
+
     @Query("select tag from Tag tag where tag.id in :tagIds")
     Set<Tag> findAllByIds(@Param("tagIds") List<Long> tagIds);
 
+    Optional<Tag> findFirstByParentTagAndName(Tag parentTag, String name);
+
+    Optional<Tag> findFirstByParentTagIsNullAndName(String name);
+
 }
@@ -0,0 +1,217 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.repository.EntityWriteEvents;
+import com.gparente.photoorganizer.repository.EntityWriteListener;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Service class for counting the photos and the tags of the paged listings, with a cache of the counts.
+ * <p>
+ * The counts are kept per listing, the photos, the photos of each tag or subtree and the tags, for "application.pagination.count-time-to-live-seconds".
+ * The counts of the photos are dropped when a photo is created or deleted or its tags change, the counts of the subtrees
+ * when a tag is moved too, and the counts of the tags when a tag is created or deleted. The writes are seen from
+ * the {@link EntityWriteEvents}, whatever the code which made them, and the counts are dropped once their transaction is over,
+ * so a count is never read back from a write not committed yet.
+ * <p>
+ * With "application.pagination.keep-large-counts" the counts of at least "application.pagination.large-count-threshold" elements
+ * are not dropped by the writes: they are exact when counted, then kept, possibly stale, until their time to live ends,
+ * so a huge listing is counted once per time to live.
+ */
+@Service
+public class PageCountService {
+
+    private final Logger log = LoggerFactory.getLogger(PageCountService.class);
+
+    private static final String PHOTOS = "photos";
+
+    private static final String SUBTREE_PHOTOS = PHOTOS + ":subtree:";
+
+    private static final String TAGS = "tags";
+
+    private final PhotoRepository photoRepository;
+
+    private final TagRepository tagRepository;
+
+    private final EntityWriteEvents entityWriteEvents;
+
+    private final long timeToLiveNanos;
+
+    private final boolean keepLargeCounts;
+
+    private final long largeCountThreshold;
+
+    private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented by each write, so that a count read while a write is committed is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public PageCountService(PhotoRepository photoRepository, TagRepository tagRepository,
+                            EntityWriteEvents entityWriteEvents, ApplicationProperties applicationProperties) {
+        this.photoRepository = photoRepository;
+        this.tagRepository = tagRepository;
+        this.entityWriteEvents = entityWriteEvents;
+        ApplicationProperties.Pagination pagination = applicationProperties.getPagination();
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(pagination.getCountTimeToLiveSeconds());
+        this.keepLargeCounts = pagination.isKeepLargeCounts();
+        this.largeCountThreshold = pagination.getLargeCountThreshold();
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        entityWriteEvents.addListener(new WriteListener());
+    }
+
+    /**
+     * Count all the photos.
+     *
+     * @return the number of photos
+     */
+    public long countPhotos() {
+        return this.count(PHOTOS, photoRepository::count);
+    }
+
+    /**
+     * Count the photos of a tag.
+     *
+     * @param tag the tag
+     * @return the number of photos of the tag
+     */
+    public long countPhotosByTag(Tag tag) {
+        return this.count(PHOTOS + ":tag:" + tag.getId(), () -> photoRepository.countByTag(tag));
+    }
+
+    /**
+     * Count the photos of a tag and of all its descendants.
+     *
+     * @param tag the tag at the top of the subtree
+     * @return the number of photos of the subtree
+     */
+    public long countPhotosBySubtree(Tag tag) {
+        return this.count(SUBTREE_PHOTOS + tag.getId(), () -> photoRepository.countBySubtree(tag.getId()));
+    }
+
+    /**
+     * Count all the tags.
+     *
+     * @return the number of tags
+     */
+    public long countTags() {
+        return this.count(TAGS, tagRepository::count);
+    }
+
+    /**
+     * Drop all the counts, now and once the current transaction is over, for the bulk statements which Hibernate doesn't see.
+     */
+    public void evictAll() {
+        EntityWriteEvents.nowAndAfterTransaction(() -> {
+            this.evict(PHOTOS);
+            this.evict(TAGS);
+        });
+    }
+
+    private long count(String key, LongSupplier query) {
+        long now = System.nanoTime();
+        CachedCount cached = counts.get(key);
+        if (cached != null && now - cached.countedAt < timeToLiveNanos) {
+            return cached.count;
+        }
+
+        long countGeneration = generation.get();
+        long count = query.getAsLong();
+        if (generation.get() == countGeneration) {
+            counts.put(key, new CachedCount(count, now));
+        }
+        return count;
+    }
+
+    /**
+     * Drop the counts of a listing and of its filtered listings, except the large counts kept through the writes.
+     */
+    private void evict(String prefix) {
+        log.debug("Dropping the cached counts of {}", prefix);
+        generation.incrementAndGet();
+        counts.entrySet().removeIf(entry -> entry.getKey().startsWith(prefix)
+            && !(keepLargeCounts && entry.getValue().count >= largeCountThreshold));
+    }
+
+    private void evictAfterTransaction(EventSource session, String... prefixes) {
+        EntityWriteEvents.nowAndAfterTransaction(session, () -> {
+            for (String prefix : prefixes) {
+                this.evict(prefix);
+            }
+        });
+    }
+
+    private static final class CachedCount {
+
+        private final long count;
+
+        private final long countedAt;
+
+        private CachedCount(long count, long countedAt) {
+            this.count = count;
+            this.countedAt = countedAt;
+        }
+    }
+
+    /**
+     * Drops the counts changed by the writes of the photos and of the tags.
+     */
+    private final class WriteListener implements EntityWriteListener {
+
+        @Override
+        public void onInsert(PostInsertEvent event) {
+            this.onEntityChange(event.getSession(), event.getEntity());
+        }
+
+        @Override
+        public void onUpdate(PostUpdateEvent event) {
+            if (event.getEntity() instanceof Tag) {
+                // A moved tag takes its photos to other subtrees
+                evictAfterTransaction(event.getSession(), SUBTREE_PHOTOS);
+            }
+        }
+
+        @Override
+        public void onDelete(PostDeleteEvent event) {
+            this.onEntityChange(event.getSession(), event.getEntity());
+        }
+
+        @Override
+        public void onCollectionChange(AbstractCollectionEvent event) {
+            // The tags of a photo, seen from either side
+            evictAfterTransaction(event.getSession(), PHOTOS);
+        }
+
+        private void onEntityChange(EventSource session, Object entity) {
+            if (entity instanceof Photo) {
+                evictAfterTransaction(session, PHOTOS);
+            } else if (entity instanceof Tag) {
+                // A deleted tag takes its photos out of its listing
+                evictAfterTransaction(session, TAGS, PHOTOS);
+            }
+        }
+    }
+}
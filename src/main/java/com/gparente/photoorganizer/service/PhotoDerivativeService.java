@@ -0,0 +1,268 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.service.image.ImageDecoder;
+import com.gparente.photoorganizer.service.image.ImageResampler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for generating the images derived from the photos, like the thumbnails.
+ * <p>
+ * The generation runs in background on the "derivativeTaskExecutor", so an upload returns as soon as
+ * the original image is stored. Until then the photo is {@link DerivativeStatus#PENDING}.
+ * <p>
+ * A derivative is made for each configured size, which is its width, and stored in the {@link PhotoStorage}
+ * under the name of its size. The derivative of the thumbnail size is the thumbnail, stored under the name "thumbnail".
+ */
+@Service
+public class PhotoDerivativeService {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoDerivativeService.class);
+
+    private static final String THUMBNAIL = "thumbnail";
+
+    private final PhotoRepository photoRepository;
+
+    private final PhotoStorage photoStorage;
+
+    private final ThreadPoolTaskExecutor derivativeTaskExecutor;
+
+    private final ThumbnailCache thumbnailCache;
+
+    /**
+     * Ids of the photos queued or in generation, so that a photo is never generated twice at the same time.
+     */
+    private final Set<Long> inProgress = ConcurrentHashMap.newKeySet();
+
+    private final int thumbnailSize;
+
+    /**
+     * The derivative sizes, the largest first, the thumbnail size included.
+     */
+    private final List<Integer> sizes;
+
+    public PhotoDerivativeService(PhotoRepository photoRepository, PhotoStorage photoStorage,
+                                  @Qualifier("derivativeTaskExecutor") ThreadPoolTaskExecutor derivativeTaskExecutor,
+                                  ThumbnailCache thumbnailCache, ApplicationProperties applicationProperties) {
+        this.photoRepository = photoRepository;
+        this.photoStorage = photoStorage;
+        this.derivativeTaskExecutor = derivativeTaskExecutor;
+        this.thumbnailCache = thumbnailCache;
+        this.thumbnailSize = applicationProperties.getDerivatives().getThumbnailSize();
+
+        TreeSet<Integer> sortedSizes = new TreeSet<>(Collections.reverseOrder());
+        sortedSizes.addAll(applicationProperties.getDerivatives().getSizes());
+        sortedSizes.add(thumbnailSize);
+        this.sizes = Collections.unmodifiableList(new ArrayList<>(sortedSizes));
+    }
+
+    /**
+     * Get the thumbnail file of a photo.
+     *
+     * @param photo the photo
+     * @return the thumbnail file
+     */
+    public Path getThumbnailPath(Photo photo) {
+        return photoStorage.getDerivative(photo, THUMBNAIL);
+    }
+
+    /**
+     * Get the file of a derivative of a photo.
+     *
+     * @param photo the photo
+     * @param size the size of the derivative, one of {@link #getSizes()}
+     * @return the derivative file
+     */
+    public Path getDerivativePath(Photo photo, int size) {
+        return photoStorage.getDerivative(photo, this.getDerivativeName(size));
+    }
+
+    /**
+     * Get the names of the derivatives in the {@link PhotoStorage}.
+     *
+     * @return the names of the derivatives
+     */
+    public List<String> getDerivativeNames() {
+        return sizes.stream().map(this::getDerivativeName).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the sizes of the derivatives.
+     *
+     * @return the sizes of the derivatives, the largest first
+     */
+    public List<Integer> getSizes() {
+        return sizes;
+    }
+
+    /**
+     * Queue the generation of the derivatives of a saved photo.
+     * <p>
+     * When the queue is full the photo stays pending, and it is queued again by {@link #requeuePendingPhotos()}.
+     *
+     * @param photo the photo, with its original image stored
+     */
+    public void generateDerivatives(Photo photo) {
+        Long id = photo.getId();
+        String contentHash = photo.getContentHash();
+        String type = photo.getType();
+        Path original = photoStorage.getOriginal(photo);
+        Map<Integer, Path> derivatives = this.getDerivativePaths(photo);
+
+        if (!inProgress.add(id)) {
+            return;
+        }
+        try {
+            derivativeTaskExecutor.execute(() -> {
+                try {
+                    this.generateDerivatives(id, contentHash, type, original, derivatives);
+                } finally {
+                    inProgress.remove(id);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inProgress.remove(id);
+            log.warn("Derivatives queue is full, photo {} will be retried later", id);
+        }
+    }
+
+    /**
+     * Generate the derivatives of a saved photo in the calling thread.
+     * <p>
+     * This is for the callers which already run on a bounded pool of their own, like the photo import.
+     *
+     * @param photo the photo, with its original image stored
+     */
+    public void generateDerivativesNow(Photo photo) {
+        Long id = photo.getId();
+        if (!inProgress.add(id)) {
+            return;
+        }
+        try {
+            this.generateDerivatives(id, photo.getContentHash(), photo.getType(), photoStorage.getOriginal(photo),
+                this.getDerivativePaths(photo));
+        } finally {
+            inProgress.remove(id);
+        }
+    }
+
+    /**
+     * Queue again the photos still pending, which were rejected by a full queue or lost on a restart.
+     * <p>
+     * The ids of the pending photos are read by pages of the free capacity of the queue, skipping the photos already
+     * queued or in generation, until the queue is full: the next ones are queued by the next runs.
+     * <p>
+     * This is scheduled to get fired every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void requeuePendingPhotos() {
+        BlockingQueue<Runnable> queue = derivativeTaskExecutor.getThreadPoolExecutor().getQueue();
+        Long afterId = 0L;
+        int free = queue.remainingCapacity();
+        while (free > 0) {
+            List<Long> ids = photoRepository.findIdsByDerivativeStatus(DerivativeStatus.PENDING, afterId, new PageRequest(0, free));
+            if (ids.isEmpty()) {
+                return;
+            }
+            afterId = ids.get(ids.size() - 1);
+            List<Long> requeued = ids.stream().filter(id -> !inProgress.contains(id)).collect(Collectors.toList());
+            if (!requeued.isEmpty()) {
+                photoRepository.findAll(requeued).forEach(this::generateDerivatives);
+            }
+            free = ids.size() < free ? 0 : queue.remainingCapacity();
+        }
+    }
+
+    private Map<Integer, Path> getDerivativePaths(Photo photo) {
+        Map<Integer, Path> derivatives = new LinkedHashMap<>();
+        for (int size : sizes) {
+            derivatives.put(size, this.getDerivativePath(photo, size));
+        }
+        return derivatives;
+    }
+
+    private String getDerivativeName(int size) {
+        return size == thumbnailSize ? THUMBNAIL : String.valueOf(size);
+    }
+
+    /**
+     * The image is decoded once, for the largest size, then each derivative is resized from the previous one.
+     * <p>
+     * The derivatives are addressed by the content of the original, so the ones of an identical upload are reused.
+     */
+    private void generateDerivatives(Long id, String contentHash, String type, Path original, Map<Integer, Path> derivatives) {
+        DerivativeStatus status;
+        try {
+            if (derivatives.values().stream().allMatch(Files::exists)) {
+                log.info("Derivatives already stored for photo {}", id);
+            } else {
+                BufferedImage source = ImageDecoder.decodeForWidths(original, sizes.get(0));
+                int maxWidth = source.getWidth();
+                for (Map.Entry<Integer, Path> derivative : derivatives.entrySet()) {
+                    // A photo smaller than a size is not upscaled
+                    BufferedImage image = ImageResampler.resizeToWidth(source, Math.min(derivative.getKey(), maxWidth));
+                    this.write(image, type, derivative.getValue());
+                    if (derivative.getKey() == thumbnailSize) {
+                        // Only the thumbnails are cached
+                        thumbnailCache.evict(derivative.getValue());
+                    }
+                    source = image;
+                }
+                log.info("Derivatives stored for photo {}", id);
+            }
+            status = DerivativeStatus.READY;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error in generating the derivatives of photo {}: {}", id, e.getMessage());
+            status = DerivativeStatus.FAILED;
+        }
+
+        // The status is not updated if the image was replaced meanwhile, the photo stays pending for the new image
+        if (photoRepository.updateDerivativeStatus(id, contentHash, status) == 0) {
+            log.debug("Photo {} changed during the generation of its derivatives", id);
+        }
+    }
+
+    /**
+     * Readers never see a partially written derivative, it is written to a temporary file and moved in place.
+     */
+    private void write(BufferedImage image, String type, Path file) throws IOException {
+        Path tempFile = Files.createTempFile(file.getParent(), "derivative", "." + type);
+        try {
+            if (!ImageIO.write(image, type, tempFile.toFile())) {
+                throw new IOException("No image writer found for type " + type);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+}
@@ -0,0 +1,349 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.User;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.service.dto.PhotoImportDTO;
+import com.gparente.photoorganizer.service.util.HashUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service class for importing the photos of a directory tree on the server, like an existing photo archive.
+ * <p>
+ * The files are linked, or copied, into the {@link PhotoStorage}, and the photos are tagged with the names of
+ * their folders: a folder is a tag, child of the tag of its parent folder, the top folders being children of the root tag.
+ * <p>
+ * The files are split in batches of "application.photo-import.batch-size" on a fork/join pool of
+ * "application.photo-import.parallelism" workers. Each batch is stored, saved in one transaction,
+ * recorded in the checkpoint file of the import, then its derivatives are generated by the same worker.
+ * When the checkpoint can't be written, the import is stopped after the batches in progress.
+ * An import stopped by a restart is resumed by starting it again: the files recorded in its checkpoint are skipped.
+ */
+@Service
+public class PhotoImportService {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoImportService.class);
+
+    private static final Set<String> IMAGE_TYPES = new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "gif", "bmp"));
+
+    private final PhotoRepository photoRepository;
+
+    private final TagRepository tagRepository;
+
+    private final PhotoStorage photoStorage;
+
+    private final PhotoDerivativeService photoDerivativeService;
+
+    private final Path checkpointPath;
+
+    private final int parallelism;
+
+    private final int batchSize;
+
+    private final AtomicReference<ImportJob> currentJob = new AtomicReference<>();
+
+    public PhotoImportService(PhotoRepository photoRepository, TagRepository tagRepository, PhotoStorage photoStorage,
+                              PhotoDerivativeService photoDerivativeService, ApplicationProperties applicationProperties) {
+        this.photoRepository = photoRepository;
+        this.tagRepository = tagRepository;
+        this.photoStorage = photoStorage;
+        this.photoDerivativeService = photoDerivativeService;
+        this.checkpointPath = Paths.get(applicationProperties.getStorage().getBasePath(), "imports");
+        this.parallelism = Math.max(1, applicationProperties.getPhotoImport().getParallelism());
+        this.batchSize = Math.max(1, applicationProperties.getPhotoImport().getBatchSize());
+    }
+
+    /**
+     * Start the import of a directory tree in background.
+     *
+     * @param directory the directory to import
+     * @param user the owner of the imported photos and folder tags
+     * @return the progress of the import
+     * @throws IllegalArgumentException if the directory doesn't exist
+     * @throws IllegalStateException if an import is already running
+     */
+    public PhotoImportDTO startImport(Path directory, User user) {
+        Path root = directory.toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("No directory found at " + directory);
+        }
+
+        ImportJob job = new ImportJob(root, user);
+        ImportJob previous = currentJob.get();
+        if ((previous != null && previous.running) || !currentJob.compareAndSet(previous, job)) {
+            throw new IllegalStateException("An import is already running");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        pool.execute(() -> {
+            try {
+                this.run(job);
+            } catch (IOException | RuntimeException e) {
+                log.error("Import of directory {} failed: {}", root, e.getMessage());
+            } finally {
+                job.endDate = Instant.now();
+                job.running = false;
+                pool.shutdown();
+            }
+        });
+        return job.toDTO();
+    }
+
+    /**
+     * Get the progress of the last import.
+     *
+     * @return the progress of the last import, if any was started since the application start
+     */
+    public Optional<PhotoImportDTO> getImport() {
+        return Optional.ofNullable(currentJob.get()).map(ImportJob::toDTO);
+    }
+
+    private void run(ImportJob job) throws IOException {
+        log.info("Importing the photos of directory {}", job.root);
+        Files.createDirectories(checkpointPath);
+        Set<String> checkpoint = new HashSet<>();
+        if (Files.exists(job.checkpoint)) {
+            checkpoint.addAll(Files.readAllLines(job.checkpoint, StandardCharsets.UTF_8));
+        }
+
+        List<Path> files;
+        try (Stream<Path> tree = Files.walk(job.root)) {
+            files = tree
+                .filter(Files::isRegularFile)
+                .filter(file -> IMAGE_TYPES.contains(this.getType(file).toLowerCase(Locale.ENGLISH)))
+                .map(job.root::relativize)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        job.total.set(files.size());
+        List<Path> pending = files.stream()
+            .filter(file -> !checkpoint.contains(this.getCheckpointEntry(file)))
+            .collect(Collectors.toList());
+        job.alreadyImported.set(files.size() - pending.size());
+
+        // The folder tags are resolved before the fork, so that the workers never create the same tag twice
+        for (Path file : pending) {
+            this.getFolderTag(job, file.getParent());
+        }
+
+        new ImportTask(job, pending, 0, pending.size()).invoke();
+        log.info("Import of directory {} done: {}", job.root, job.toDTO());
+    }
+
+    private Tag getFolderTag(ImportJob job, Path folder) {
+        if (folder == null) {
+            return job.rootTag;
+        }
+        Tag folderTag = job.folderTags.get(folder);
+        if (folderTag == null) {
+            Tag parent = this.getFolderTag(job, folder.getParent());
+            String name = folder.getFileName().toString();
+            Optional<Tag> existing = parent == null
+                ? tagRepository.findFirstByParentTagIsNullAndName(name)
+                : tagRepository.findFirstByParentTagAndName(parent, name);
+            folderTag = existing.orElseGet(() -> tagRepository.save(new Tag().name(name).parentTag(parent).user(job.user)));
+            job.folderTags.put(folder, folderTag);
+        }
+        return folderTag;
+    }
+
+    private void importBatch(ImportJob job, List<Path> files) {
+        List<Photo> photos = new ArrayList<>(files.size());
+        List<String> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            Path absolute = job.root.resolve(file);
+            String name = file.getFileName().toString();
+            String type = this.getType(file);
+            try {
+                Photo photo = new Photo()
+                    .fileName(name.substring(0, name.length() - type.length() - 1))
+                    .type(type)
+                    .dateCreated(Files.getLastModifiedTime(absolute).toInstant())
+                    .derivativeStatus(DerivativeStatus.PENDING)
+                    .user(job.user);
+                Tag folderTag = file.getParent() == null ? job.rootTag : job.folderTags.get(file.getParent());
+                if (folderTag != null) {
+                    // The folder tag is shared by the workers, its photos are not loaded nor updated
+                    photo.getTags().add(folderTag);
+                }
+                photoStorage.store(photo, absolute);
+                photos.add(photo);
+                entries.add(this.getCheckpointEntry(file));
+            } catch (IOException e) {
+                log.warn("Error in importing file {}: {}", absolute, e.getMessage());
+                job.failed.incrementAndGet();
+            }
+        }
+        if (photos.isEmpty()) {
+            return;
+        }
+
+        try {
+            photoRepository.save(photos);
+        } catch (RuntimeException e) {
+            log.warn("Error in saving a batch of {} photos: {}", photos.size(), e.getMessage());
+            job.failed.addAndGet(photos.size());
+            return;
+        }
+        job.imported.addAndGet(photos.size());
+        try {
+            this.checkpoint(job, entries);
+        } catch (UncheckedIOException e) {
+            // The photos are saved, without a checkpoint they would be imported twice on a resume: the next batches are skipped
+            log.error("Error in writing the checkpoint of import {}, the import is stopped: {}", job.checkpoint, e.getMessage());
+            job.stopped = true;
+        }
+
+        for (Photo photo : photos) {
+            photoDerivativeService.generateDerivativesNow(photo);
+        }
+    }
+
+    private void checkpoint(ImportJob job, List<String> entries) {
+        synchronized (job) {
+            try {
+                Files.write(job.checkpoint, entries, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private String getType(Path file) {
+        String name = file.getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension <= 0 ? "" : name.substring(extension + 1);
+    }
+
+    /**
+     * The entries of the checkpoint are the relative paths with "/" separators, whatever the platform.
+     */
+    private String getCheckpointEntry(Path file) {
+        List<String> names = new ArrayList<>();
+        file.forEach(name -> names.add(name.toString()));
+        return String.join("/", names);
+    }
+
+    /**
+     * A batch of files when small enough, or split in two halves imported in parallel.
+     */
+    private class ImportTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ImportJob job;
+
+        private final transient List<Path> files;
+
+        private final int from;
+
+        private final int to;
+
+        ImportTask(ImportJob job, List<Path> files, int from, int to) {
+            this.job = job;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (job.stopped) {
+                return;
+            }
+            if (to - from <= batchSize) {
+                importBatch(job, files.subList(from, to));
+            } else {
+                int middle = from + (to - from) / 2;
+                invokeAll(new ImportTask(job, files, from, middle), new ImportTask(job, files, middle, to));
+            }
+        }
+    }
+
+    /**
+     * The state of an import, updated by the workers.
+     */
+    private final class ImportJob {
+
+        private final Path root;
+
+        private final User user;
+
+        private final Tag rootTag;
+
+        private final Path checkpoint;
+
+        private final Map<Path, Tag> folderTags = new HashMap<>();
+
+        private final Instant startDate = Instant.now();
+
+        private final AtomicInteger total = new AtomicInteger();
+
+        private final AtomicInteger alreadyImported = new AtomicInteger();
+
+        private final AtomicInteger imported = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile boolean running = true;
+
+        /**
+         * Set when a checkpoint can't be written, so that no more photos are saved without it.
+         */
+        private volatile boolean stopped;
+
+        private volatile Instant endDate;
+
+        ImportJob(Path root, User user) {
+            this.root = root;
+            this.user = user;
+            this.rootTag = tagRepository.findRootTag();
+            this.checkpoint = checkpointPath.resolve(HashUtil.sha256Hex(root.toString().getBytes(StandardCharsets.UTF_8)) + ".checkpoint");
+        }
+
+        PhotoImportDTO toDTO() {
+            PhotoImportDTO dto = new PhotoImportDTO();
+            dto.setDirectory(root.toString());
+            dto.setRunning(running);
+            dto.setTotal(total.get());
+            dto.setAlreadyImported(alreadyImported.get());
+            dto.setImported(imported.get());
+            dto.setFailed(failed.get());
+            dto.setStartDate(startDate);
+            dto.setEndDate(endDate);
+            return dto;
+        }
+    }
+}
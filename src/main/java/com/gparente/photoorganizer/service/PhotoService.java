@@ -0,0 +1,240 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.User;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.repository.UserRepository;
+import com.gparente.photoorganizer.service.dto.PhotoTimelineDTO;
+import com.gparente.photoorganizer.service.dto.PhotoUploadResultDTO;
+import com.gparente.photoorganizer.service.util.PhotoCursor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for managing photos: creating them in batches, and reading the photo timeline.
+ * <p>
+ * For a batch upload, the tags and the user are loaded once for the whole batch. The originals are written to the {@link PhotoStorage}
+ * in parallel on the "uploadTaskExecutor", then the photos are saved in batches of "application.upload.batch-size",
+ * one transaction per batch, and their derivatives are generated in background.
+ * <p>
+ * A file which can't be stored doesn't fail the batch, its error is reported in its result.
+ */
+@Service
+public class PhotoService {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoService.class);
+
+    private final PhotoRepository photoRepository;
+
+    private final TagRepository tagRepository;
+
+    private final UserRepository userRepository;
+
+    private final PhotoStorage photoStorage;
+
+    private final PhotoDerivativeService photoDerivativeService;
+
+    private final ThumbnailCache thumbnailCache;
+
+    private final ThreadPoolTaskExecutor uploadTaskExecutor;
+
+    private final int batchSize;
+
+    public PhotoService(PhotoRepository photoRepository, TagRepository tagRepository, UserRepository userRepository,
+                        PhotoStorage photoStorage, PhotoDerivativeService photoDerivativeService, ThumbnailCache thumbnailCache,
+                        @Qualifier("uploadTaskExecutor") ThreadPoolTaskExecutor uploadTaskExecutor,
+                        ApplicationProperties applicationProperties) {
+        this.photoRepository = photoRepository;
+        this.tagRepository = tagRepository;
+        this.userRepository = userRepository;
+        this.photoStorage = photoStorage;
+        this.photoDerivativeService = photoDerivativeService;
+        this.thumbnailCache = thumbnailCache;
+        this.uploadTaskExecutor = uploadTaskExecutor;
+        this.batchSize = Math.max(1, applicationProperties.getUpload().getBatchSize());
+    }
+
+    /**
+     * Create a photo for each uploaded file, all with the same tags and user.
+     *
+     * @param images the uploaded files
+     * @param tagIds the ids of the tags of the photos
+     * @param userId the id of the owner of the photos
+     * @return the result of each file, in the order of the files
+     */
+    public List<PhotoUploadResultDTO> createPhotos(List<MultipartFile> images, List<Long> tagIds, Long userId) {
+        log.debug("Request to create {} photos", images.size());
+
+        Set<Tag> tags = tagIds.isEmpty() ? new HashSet<>() : tagRepository.findAllByIds(tagIds);
+        User user = userRepository.findOne(userId);
+
+        List<Future<Photo>> stored = new ArrayList<>(images.size());
+        for (MultipartFile image : images) {
+            stored.add(uploadTaskExecutor.submit(() -> this.storeImage(image)));
+        }
+
+        List<PhotoUploadResultDTO> results = new ArrayList<>(images.size());
+        List<Photo> batch = new ArrayList<>(batchSize);
+        List<PhotoUploadResultDTO> batchResults = new ArrayList<>(batchSize);
+        for (int i = 0; i < images.size(); i++) {
+            PhotoUploadResultDTO result = new PhotoUploadResultDTO(images.get(i).getOriginalFilename());
+            results.add(result);
+            try {
+                Photo photo = stored.get(i).get();
+                photo.setTags(new HashSet<>(tags));
+                photo.setUser(user);
+                result.setContentHash(photo.getContentHash());
+                batch.add(photo);
+                batchResults.add(result);
+            } catch (ExecutionException e) {
+                log.warn("Error in storing image file {}: {}", result.getFileName(), e.getCause().getMessage());
+                result.setError(e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.setError("Upload interrupted");
+            }
+
+            if (batch.size() == batchSize) {
+                this.saveBatch(batch, batchResults);
+            }
+        }
+        this.saveBatch(batch, batchResults);
+
+        return results;
+    }
+
+    /**
+     * Get a page of the photo timeline, the newest photos first, then the photos without a creation date.
+     * <p>
+     * The page is sought from the position of the cursor with the (date_created, id) index, so it costs the same
+     * whatever its depth, and the photos are never counted: the page is read one photo longer to know if there is a next one.
+     * The ids and the photos are read by two queries, out of a transaction: the photos deleted in between are left out
+     * of the page, which may then be shorter than its size.
+     *
+     * @param cursor the cursor of the page, null for the first page
+     * @param size the number of photos of the page
+     * @return the photos of the page, with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public PhotoTimelineDTO getTimeline(String cursor, int size) {
+        log.debug("Request to get a page of the photo timeline after {}", cursor);
+        PhotoCursor after = cursor == null ? null : PhotoCursor.decode(cursor);
+
+        List<Long> ids = new ArrayList<>(size + 1);
+        if (after == null) {
+            ids.addAll(photoRepository.findTimelineIds(new PageRequest(0, size + 1)));
+        } else if (after.getDateCreated() != null) {
+            ids.addAll(photoRepository.findTimelineIdsAfter(after.getDateCreated(), after.getId(), new PageRequest(0, size + 1)));
+        }
+        if (ids.size() <= size) {
+            PageRequest undated = new PageRequest(0, size + 1 - ids.size());
+            if (after != null && after.getDateCreated() == null) {
+                ids.addAll(photoRepository.findUndatedTimelineIdsAfter(after.getId(), undated));
+            } else {
+                ids.addAll(photoRepository.findUndatedTimelineIds(undated));
+            }
+        }
+
+        boolean hasNext = ids.size() > size;
+        List<Long> pageIds = hasNext ? ids.subList(0, size) : ids;
+        if (pageIds.isEmpty()) {
+            return new PhotoTimelineDTO(new ArrayList<>(), null);
+        }
+        Map<Long, Photo> photosById = photoRepository.findAllWithEagerRelationshipsByIdIn(pageIds).stream()
+            .collect(Collectors.toMap(Photo::getId, Function.identity()));
+        // The photos deleted since their ids were read are left out, the next page starts after the last photo kept
+        List<Photo> photos = pageIds.stream()
+            .map(photosById::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        if (photos.isEmpty() && hasNext) {
+            // Every photo of the page is deleted: the ids are read again, without them
+            return this.getTimeline(cursor, size);
+        }
+
+        String nextCursor = hasNext ? PhotoCursor.of(photos.get(photos.size() - 1)).encode() : null;
+        return new PhotoTimelineDTO(photos, nextCursor);
+    }
+
+    /**
+     * Delete the files of a deleted photo, unless they are shared with another photo uploaded with the same content.
+     * The files are checked and deleted by the {@link PhotoStorage} once no upload of the same content can be pending.
+     * The cached thumbnail of the deleted files is dropped.
+     *
+     * @param photo the deleted photo
+     */
+    public void deleteFiles(Photo photo) {
+        photoStorage.deleteUnused(photo, photoDerivativeService.getDerivativeNames(),
+            deleted -> deleted.getPath() != null && photoRepository.countByPath(deleted.getPath()) > 0);
+        thumbnailCache.evict(photoDerivativeService.getThumbnailPath(photo));
+    }
+
+    private Photo storeImage(MultipartFile image) throws IOException {
+        String originalFilename = image.getOriginalFilename();
+        int extension = originalFilename == null ? -1 : originalFilename.lastIndexOf('.');
+        if (image.isEmpty()) {
+            throw new IOException("The image file is empty");
+        }
+        if (extension <= 0 || extension == originalFilename.length() - 1) {
+            throw new IOException("The image file has no type");
+        }
+
+        Photo photo = new Photo()
+            .fileName(originalFilename.substring(0, extension))
+            .type(originalFilename.substring(extension + 1))
+            .dateCreated(Instant.now())
+            .derivativeStatus(DerivativeStatus.PENDING);
+        try (InputStream content = image.getInputStream()) {
+            photoStorage.store(photo, content);
+        }
+        return photo;
+    }
+
+    /**
+     * Save a batch of photos in one transaction, then queue their derivatives generation.
+     */
+    private void saveBatch(List<Photo> batch, List<PhotoUploadResultDTO> batchResults) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            photoRepository.save(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                batchResults.get(i).setPhotoId(batch.get(i).getId());
+                photoDerivativeService.generateDerivatives(batch.get(i));
+            }
+        } catch (RuntimeException e) {
+            // The stored originals are kept, they may be shared with other photos and are addressed by content
+            log.warn("Error in saving a batch of {} photos: {}", batch.size(), e.getMessage());
+            for (PhotoUploadResultDTO result : batchResults) {
+                result.setError("The photo couldn't be saved");
+            }
+        }
+        batch.clear();
+        batchResults.clear();
+    }
+}
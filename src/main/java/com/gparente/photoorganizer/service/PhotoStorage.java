@@ -0,0 +1,94 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.domain.Photo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Storage of the photo files: the originals and their derivatives.
+ * <p>
+ * The files are addressed by the content of the original, so identical uploads share the same files.
+ * The key of the original in the storage is kept in {@link Photo#getPath()}.
+ * The photos without a path are legacy photos, whose files are in the legacy flat directory, by file name.
+ */
+public interface PhotoStorage {
+
+    /**
+     * Store the original of a photo, setting its content hash and its path.
+     * <p>
+     * The content is streamed to the storage and hashed in the same pass, it is never held in memory.
+     * Nothing is kept if the same content is already stored.
+     *
+     * @param photo the photo, with its type set
+     * @param content the stream of the original, closed when stored
+     * @throws IOException if the original can't be read or written
+     */
+    void store(Photo photo, InputStream content) throws IOException;
+
+    /**
+     * Store a file already on disk as the original of a photo, setting its content hash and its path.
+     * <p>
+     * The file is linked, or copied when links are not supported, and left in place.
+     * Nothing is kept if the same content is already stored.
+     *
+     * @param photo the photo, with its type set
+     * @param file the file of the original
+     * @throws IOException if the file can't be read or copied
+     */
+    void store(Photo photo, Path file) throws IOException;
+
+    /**
+     * Get the file of the original of a photo.
+     *
+     * @param photo the photo
+     * @return the file of the original
+     */
+    Path getOriginal(Photo photo);
+
+    /**
+     * Get the file of a derivative of a photo.
+     *
+     * @param photo the photo
+     * @param name the name of the derivative, like "thumbnail"
+     * @return the file of the derivative
+     */
+    Path getDerivative(Photo photo, String name);
+
+    /**
+     * Delete the original of a photo and its derivatives.
+     * <p>
+     * The caller checks that no other photo shares the same files.
+     *
+     * @param photo the photo
+     * @param derivativeNames the names of the derivatives of the photo
+     */
+    void delete(Photo photo, Collection<String> derivativeNames);
+
+    /**
+     * Delete the original of a photo and its derivatives, unless they are still used by another photo.
+     * <p>
+     * The check and the deletion are atomic with the stores of the same content. A photo stored before the check may
+     * not be committed yet, so the deletion waits "application.storage.delete-delay-seconds", is cancelled by a store
+     * of the same content meanwhile, and checks again then.
+     *
+     * @param photo the deleted photo
+     * @param derivativeNames the names of the derivatives of the photo
+     * @param isUsed whether the files of the photo are used by another photo, checked when they are deleted
+     */
+    void deleteUnused(Photo photo, Collection<String> derivativeNames, Predicate<Photo> isUsed);
+
+    /**
+     * Move a legacy photo to the content addressed layout, setting its content hash and its path.
+     * <p>
+     * The legacy files are linked, or copied when links are not supported, and left in place.
+     *
+     * @param photo the legacy photo
+     * @param derivativeNames the names of the derivatives of the photo, the missing ones are skipped
+     * @throws IOException if the original is missing or can't be copied
+     */
+    void migrate(Photo photo, Collection<String> derivativeNames) throws IOException;
+}
@@ -0,0 +1,68 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.service.dto.StorageMigrationDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Service class for migrating the legacy photos, stored by file name in a flat directory, to the {@link PhotoStorage}.
+ * <p>
+ * Each photo is saved as soon as its files are migrated, so a migration can be stopped and run again:
+ * it only looks at the photos without a path.
+ */
+@Service
+public class PhotoStorageMigrationService {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoStorageMigrationService.class);
+
+    private final PhotoRepository photoRepository;
+
+    private final PhotoStorage photoStorage;
+
+    private final PhotoDerivativeService photoDerivativeService;
+
+    public PhotoStorageMigrationService(PhotoRepository photoRepository, PhotoStorage photoStorage,
+                                        PhotoDerivativeService photoDerivativeService) {
+        this.photoRepository = photoRepository;
+        this.photoStorage = photoStorage;
+        this.photoDerivativeService = photoDerivativeService;
+    }
+
+    /**
+     * Migrate the legacy photos to the photo storage, rewriting their path.
+     *
+     * @return the counts of the photos migrated, with a missing original, and whose migration failed
+     */
+    public StorageMigrationDTO migrateLegacyPhotos() {
+        StorageMigrationDTO result = new StorageMigrationDTO();
+        List<Photo> photos = photoRepository.findAllByPathIsNull();
+        log.info("Migrating {} legacy photos to the photo storage", photos.size());
+
+        for (Photo photo : photos) {
+            if (!Files.exists(photoStorage.getOriginal(photo))) {
+                log.warn("No original found for legacy photo {}", photo.getId());
+                result.setMissing(result.getMissing() + 1);
+                continue;
+            }
+            try {
+                photoStorage.migrate(photo, photoDerivativeService.getDerivativeNames());
+                photoRepository.save(photo);
+                result.setMigrated(result.getMigrated() + 1);
+            } catch (IOException e) {
+                log.warn("Error in migrating legacy photo {}: {}", photo.getId(), e.getMessage());
+                result.setFailed(result.getFailed() + 1);
+            }
+        }
+
+        log.info("Legacy photos migration done: {}", result);
+        return result;
+    }
+}
@@ -0,0 +1,104 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for managing tags.
+ * <p>
+ * A subtree is deleted with a few set based statements, whatever its size: the subtree is read from the "tag_closure" table
+ * within each statement, and the photos left without tags are found in one query and deleted by id. The statements
+ * bypass Hibernate, so the cached counts and the tag tree are outdated explicitly, and the files of the deleted photos
+ * are deleted in background once the transaction is committed.
+ */
+@Service
+@Transactional
+public class TagService {
+
+    private final Logger log = LoggerFactory.getLogger(TagService.class);
+
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final TagRepository tagRepository;
+
+    private final PhotoRepository photoRepository;
+
+    private final PhotoService photoService;
+
+    private final PageCountService pageCountService;
+
+    private final TagTreeService tagTreeService;
+
+    private final Executor taskExecutor;
+
+    public TagService(TagRepository tagRepository, PhotoRepository photoRepository, PhotoService photoService,
+                      PageCountService pageCountService, TagTreeService tagTreeService,
+                      @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.tagRepository = tagRepository;
+        this.photoRepository = photoRepository;
+        this.photoService = photoService;
+        this.pageCountService = pageCountService;
+        this.tagTreeService = tagTreeService;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Delete a tag with all its descendants, and the photos which have no other tag.
+     *
+     * @param id the id of the tag
+     * @return the number of tags deleted, 0 if there is no tag of this id
+     */
+    public int deleteSubtree(Long id) {
+        log.debug("Request to delete the subtree of Tag : {}", id);
+
+        List<Long> subtree = tagRepository.findSubtreeIds(id);
+        if (subtree.isEmpty()) {
+            return 0;
+        }
+
+        List<Photo> orphans = photoRepository.findAllOnlyInSubtree(id);
+        int links = photoRepository.deleteTagsOfSubtree(id);
+        List<Long> orphanIds = orphans.stream().map(Photo::getId).collect(Collectors.toList());
+        for (int i = 0; i < orphanIds.size(); i += DELETE_BATCH_SIZE) {
+            photoRepository.deleteByIdIn(orphanIds.subList(i, Math.min(i + DELETE_BATCH_SIZE, orphanIds.size())));
+        }
+
+        // Without their parents, the tags of the subtree are deleted at once, then their paths
+        tagRepository.unlinkSubtree(id);
+        int tags = tagRepository.deleteSubtree(id);
+        for (int i = 0; i < subtree.size(); i += DELETE_BATCH_SIZE) {
+            tagRepository.deleteClosureOf(subtree.subList(i, Math.min(i + DELETE_BATCH_SIZE, subtree.size())));
+        }
+        log.info("Deleted {} tags, {} photo tags and {} photos", tags, links, orphans.size());
+
+        pageCountService.evictAll();
+        tagTreeService.outdate();
+        this.deleteFilesAfterCommit(orphans);
+        return tags;
+    }
+
+    private void deleteFilesAfterCommit(List<Photo> photos) {
+        if (photos.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                taskExecutor.execute(() -> photos.forEach(photoService::deleteFiles));
+            }
+        });
+    }
+}
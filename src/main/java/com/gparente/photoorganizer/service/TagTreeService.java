@@ -0,0 +1,127 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.repository.EntityWriteEvents;
+import com.gparente.photoorganizer.repository.EntityWriteListener;
+import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.service.util.TagTree;
+
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Service class for navigating the tag tree from memory.
+ * <p>
+ * The tree is an immutable {@link TagTree} snapshot, read by all the requests without locking. When a tag is created,
+ * updated or deleted, whatever the code which writes it, the snapshot is outdated as soon as the write is flushed,
+ * and again once its transaction is over. The next reader builds a new snapshot from a single query and publishes it,
+ * the readers of the previous one keep it until they are done.
+ */
+@Service
+public class TagTreeService {
+
+    private final Logger log = LoggerFactory.getLogger(TagTreeService.class);
+
+    private final TagRepository tagRepository;
+
+    private final EntityWriteEvents entityWriteEvents;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * Incremented by each write of a tag, a snapshot is up to date while it has the current generation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public TagTreeService(TagRepository tagRepository, EntityWriteEvents entityWriteEvents) {
+        this.tagRepository = tagRepository;
+        this.entityWriteEvents = entityWriteEvents;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        entityWriteEvents.addListener(new WriteListener());
+    }
+
+    /**
+     * Get the current snapshot of the tag tree, built again if a tag was written since the last one.
+     *
+     * @return the tag tree
+     */
+    public TagTree getTree() {
+        Snapshot current = snapshot.get();
+        if (current != null && current.generation == generation.get()) {
+            return current.tree;
+        }
+        synchronized (this) {
+            current = snapshot.get();
+            long treeGeneration = generation.get();
+            if (current != null && current.generation == treeGeneration) {
+                return current.tree;
+            }
+            TagTree tree = TagTree.of(tagRepository.findAllWithUser());
+            log.debug("Tag tree built with {} tags", tree.size());
+            snapshot.set(new Snapshot(tree, treeGeneration));
+            return tree;
+        }
+    }
+
+    /**
+     * Outdate the snapshot, now and once the current transaction is over, for the bulk statements which Hibernate doesn't see.
+     */
+    public void outdate() {
+        EntityWriteEvents.nowAndAfterTransaction(generation::incrementAndGet);
+    }
+
+    private void outdate(EventSource session) {
+        EntityWriteEvents.nowAndAfterTransaction(session, generation::incrementAndGet);
+    }
+
+    private static final class Snapshot {
+
+        private final TagTree tree;
+
+        private final long generation;
+
+        private Snapshot(TagTree tree, long generation) {
+            this.tree = tree;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Outdates the snapshot on the writes of the tags.
+     */
+    private final class WriteListener implements EntityWriteListener {
+
+        @Override
+        public void onInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Tag) {
+                outdate(event.getSession());
+            }
+        }
+
+        @Override
+        public void onUpdate(PostUpdateEvent event) {
+            if (event.getEntity() instanceof Tag) {
+                outdate(event.getSession());
+            }
+        }
+
+        @Override
+        public void onDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Tag) {
+                outdate(event.getSession());
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cache of the encoded thumbnails, the most requested files, so that they are read from the disk once.
+ * <p>
+ * The thumbnails are kept by file in direct buffers, out of the heap, so a large cache doesn't slow down the garbage
+ * collections. The cache holds at most "application.derivatives.thumbnail-cache-size" bytes, and evicts the thumbnails
+ * the least likely to be requested again, by frequency and recency (W-TinyLFU).
+ * <p>
+ * A thumbnail is evicted when its file is written or deleted. Loading a thumbnail blocks its eviction until the thumbnail
+ * is cached, so the eviction always drops what was read before the file changed.
+ * <p>
+ * With a positive "application.derivatives.thumbnail-pack-size" the thumbnails are then moved to the {@link ThumbnailPack} in the
+ * storage base path, a segment file mapped in memory and kept across restarts, and served as slices of its mapping.
+ * The cache only holds the thumbnails which don't fit in the pack. The pack is compacted in background once the space
+ * of the thumbnails written or deleted since is worth it.
+ */
+@Service
+public class ThumbnailCache {
+
+    private final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private final Cache<Path, Thumbnail> thumbnails;
+
+    private final ThumbnailPack thumbnailPack;
+
+    public ThumbnailCache(ApplicationProperties applicationProperties) {
+        ApplicationProperties.Derivatives derivatives = applicationProperties.getDerivatives();
+        this.thumbnails = Caffeine.newBuilder()
+            .maximumWeight(derivatives.getThumbnailCacheSize())
+            .weigher((Path file, Thumbnail thumbnail) -> thumbnail.bytes.capacity())
+            .build();
+        this.thumbnailPack = derivatives.getThumbnailPackSize() > 0
+            ? openPack(Paths.get(applicationProperties.getStorage().getBasePath()), derivatives.getThumbnailPackSize()) : null;
+    }
+
+    /**
+     * Get a thumbnail, read from its file if not cached.
+     *
+     * @param file the thumbnail file
+     * @return the thumbnail
+     * @throws java.nio.file.NoSuchFileException if the thumbnail file doesn't exist
+     * @throws IOException if the thumbnail file can't be read
+     */
+    public Thumbnail get(Path file) throws IOException {
+        if (thumbnailPack == null) {
+            return this.load(file);
+        }
+        String key = file.toString();
+        Thumbnail thumbnail = thumbnailPack.get(key);
+        if (thumbnail == null) {
+            long generation = thumbnailPack.beginLoad(key);
+            try {
+                thumbnail = this.load(file);
+                // The thumbnail is not added if its file changed since it was read
+                if (thumbnailPack.add(key, thumbnail.getBytes(), thumbnail.getLastModified(), generation)) {
+                    thumbnails.invalidate(file);
+                }
+            } finally {
+                thumbnailPack.endLoad(key);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Drop a thumbnail whose file is written or deleted.
+     *
+     * @param file the thumbnail file
+     */
+    public void evict(Path file) {
+        log.debug("Dropping the cached thumbnail {}", file);
+        thumbnails.invalidate(file);
+        if (thumbnailPack != null) {
+            try {
+                thumbnailPack.remove(file.toString());
+            } catch (IOException e) {
+                log.warn("Error in removing the thumbnail {} from the pack: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compact the thumbnail pack, when the thumbnails written or deleted take enough of its space.
+     * <p>
+     * This is scheduled to get fired every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void compactPack() {
+        if (thumbnailPack != null && thumbnailPack.isWasteful()) {
+            try {
+                thumbnailPack.compact();
+                log.info("Thumbnail pack compacted, {} thumbnails", thumbnailPack.size());
+            } catch (IOException e) {
+                log.warn("Error in compacting the thumbnail pack: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closePack() throws IOException {
+        if (thumbnailPack != null) {
+            thumbnailPack.close();
+        }
+    }
+
+    /**
+     * Without a pack the thumbnails are only cached in memory.
+     */
+    private ThumbnailPack openPack(Path directory, long size) {
+        try {
+            ThumbnailPack pack = ThumbnailPack.open(directory, size);
+            if (pack == null) {
+                log.warn("The thumbnail pack in {} is used by another application, the thumbnails are not packed", directory);
+            }
+            return pack;
+        } catch (IOException e) {
+            log.warn("Error in opening the thumbnail pack in {}, the thumbnails are not packed: {}", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    private Thumbnail load(Path file) throws IOException {
+        try {
+            return thumbnails.get(file, ThumbnailCache::read);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Thumbnail read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            ByteBuffer bytes = ByteBuffer.allocateDirect(Math.toIntExact(channel.size()));
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // The file is read until the buffer is full, or the end of a file truncated meanwhile
+            }
+            bytes.flip();
+            return new Thumbnail(bytes.asReadOnlyBuffer(), lastModified);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * An encoded thumbnail and the modification time of its file.
+     */
+    public static final class Thumbnail {
+
+        private final ByteBuffer bytes;
+
+        private final long lastModified;
+
+        Thumbnail(ByteBuffer bytes, long lastModified) {
+            this.bytes = bytes;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * The bytes of the thumbnail, read only, in a buffer of the caller.
+         *
+         * @return the bytes of the thumbnail
+         */
+        public ByteBuffer getBytes() {
+            return bytes.duplicate();
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
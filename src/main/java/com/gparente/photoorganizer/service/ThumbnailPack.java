@@ -0,0 +1,353 @@
+package com.gparente.photoorganizer.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only pack of the thumbnails: a single segment file mapped in memory, so that a thumbnail is served as a slice
+ * of the mapping, without opening its file.
+ * <p>
+ * Each record of the segment holds the key of a thumbnail with its bytes, their modification time and a CRC32 of both.
+ * A removed thumbnail is recorded by a tombstone, a record without bytes. The index of the live records, by key, is
+ * rebuilt by scanning the segment when the pack is opened; the scan stops at the first record torn by a crash, and the
+ * next records are written from there.
+ * <p>
+ * The space of the records replaced or removed is reclaimed by {@link #compact()}, which copies the live records to
+ * a new segment moved over the old one. The slices of the old segment served meanwhile stay valid, its mapping is
+ * released once they are all collected.
+ */
+final class ThumbnailPack implements Closeable {
+
+    private static final String SEGMENT = "thumbnails.pack";
+
+    private static final String LOCK = "thumbnails.lock";
+
+    /**
+     * The key length, the bytes length, the modification time and the CRC32.
+     */
+    private static final int HEADER = 4 + 4 + 8 + 4;
+
+    private static final int TOMBSTONE = -1;
+
+    private final Path directory;
+
+    private final int capacity;
+
+    private final FileChannel lockChannel;
+
+    private volatile Segment segment;
+
+    /**
+     * Incremented by the removals of the thumbnails packed or being loaded, so that a thumbnail read before its file
+     * changed is not added.
+     */
+    private long generation;
+
+    /**
+     * The number of loads in progress by key, the removals of the other keys leave the generation as is.
+     */
+    private final Map<String, Integer> loads = new HashMap<>();
+
+    private ThumbnailPack(Path directory, int capacity, FileChannel lockChannel, Segment segment) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.lockChannel = lockChannel;
+        this.segment = segment;
+    }
+
+    /**
+     * Open the pack of a directory, creating it if missing.
+     * <p>
+     * The pack is locked while open, so that two applications never write the same segment.
+     *
+     * @param directory the directory of the pack
+     * @param capacity the size of the segment, at most 2 GB as it is mapped at once
+     * @return the pack, or null if it is already open
+     * @throws IOException if the segment can't be created or mapped
+     */
+    static ThumbnailPack open(Path directory, long capacity) throws IOException {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The thumbnail pack can't be larger than " + Integer.MAX_VALUE + " bytes");
+        }
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockChannel.close();
+                return null;
+            }
+            Segment segment = Segment.map(directory.resolve(SEGMENT), (int) capacity);
+            segment.scan();
+            return new ThumbnailPack(directory, (int) capacity, lockChannel, segment);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get a thumbnail.
+     *
+     * @param key the key of the thumbnail
+     * @return the thumbnail, a read only slice of the segment, or null if it is not in the pack
+     */
+    ThumbnailCache.Thumbnail get(String key) {
+        Segment current = segment;
+        Entry entry = current.index.get(key);
+        return entry == null ? null : new ThumbnailCache.Thumbnail(current.slice(entry).asReadOnlyBuffer(), entry.lastModified);
+    }
+
+    /**
+     * Start the load of a thumbnail missing from the pack, before its file is read.
+     *
+     * @param key the key of the thumbnail
+     * @return the generation to pass to {@link #add}
+     */
+    synchronized long beginLoad(String key) {
+        loads.merge(key, 1, Integer::sum);
+        return generation;
+    }
+
+    /**
+     * End the load of a thumbnail, added or not.
+     *
+     * @param key the key of the thumbnail
+     */
+    synchronized void endLoad(String key) {
+        loads.computeIfPresent(key, (loaded, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Add a thumbnail, unless a thumbnail was removed since it was read.
+     *
+     * @param key the key of the thumbnail
+     * @param bytes the bytes of the thumbnail
+     * @param lastModified the modification time of the thumbnail
+     * @param generation the generation of the load of the thumbnail
+     * @return true if the thumbnail is added, false if it was removed meanwhile or the segment is full
+     */
+    synchronized boolean add(String key, ByteBuffer bytes, long lastModified, long generation) {
+        return generation == this.generation && segment.append(key, bytes, lastModified);
+    }
+
+    /**
+     * Remove a thumbnail whose file is written or deleted.
+     * <p>
+     * When the segment has no room left for the tombstone, it is compacted without the thumbnail.
+     *
+     * @param key the key of the thumbnail
+     * @throws IOException if the segment is full and can't be compacted
+     */
+    synchronized void remove(String key) throws IOException {
+        boolean packed = segment.index.containsKey(key);
+        if (packed || loads.containsKey(key)) {
+            generation++;
+        }
+        if (packed && !segment.append(key, null, 0L)) {
+            segment.index.remove(key);
+            this.compact();
+        }
+    }
+
+    /**
+     * Whether the records replaced or removed take at least half of the records, or a quarter of the segment.
+     *
+     * @return true if the segment is worth compacting
+     */
+    synchronized boolean isWasteful() {
+        return segment.deadBytes > 0 && (segment.deadBytes * 2 >= segment.position || segment.deadBytes * 4 >= capacity);
+    }
+
+    /**
+     * Copy the live records to a new segment, moved over the current one.
+     * <p>
+     * The compaction is all or nothing: when a live record doesn't fit in the new segment, the current one is kept.
+     *
+     * @throws IOException if the new segment can't be written, or the live records don't fit in it
+     */
+    synchronized void compact() throws IOException {
+        Segment current = segment;
+        Path tempFile = Files.createTempFile(directory, "thumbnails", ".tmp");
+        try {
+            Segment compacted = Segment.map(tempFile, capacity);
+            for (Map.Entry<String, Entry> record : current.index.entrySet()) {
+                // The live records take at most the space of the current segment, a record which doesn't fit aborts
+                if (!compacted.append(record.getKey(), current.slice(record.getValue()), record.getValue().lastModified)) {
+                    throw new IOException("The " + current.index.size() + " thumbnails of the pack don't fit in its compacted segment");
+                }
+            }
+            compacted.buffer.force();
+            Files.move(tempFile, directory.resolve(SEGMENT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            segment = compacted;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * The number of thumbnails in the pack.
+     *
+     * @return the number of thumbnails
+     */
+    int size() {
+        return segment.index.size();
+    }
+
+    /**
+     * Write the segment to the disk and release the lock of the pack.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segment.buffer.force();
+        lockChannel.close();
+    }
+
+    private static final class Entry {
+
+        private final int offset;
+
+        private final int length;
+
+        private final long lastModified;
+
+        /**
+         * The size of the whole record, reclaimed when the record is replaced or removed.
+         */
+        private final int size;
+
+        private Entry(int offset, int length, long lastModified, int size) {
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A mapped segment file and the index of its live records. The records are written under the lock of the pack,
+     * and read from the index without it.
+     */
+    private static final class Segment {
+
+        private final MappedByteBuffer buffer;
+
+        private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+        private int position;
+
+        private long deadBytes;
+
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * The file is extended to the capacity, sparse until the records are written, and closed once mapped.
+         */
+        private static Segment map(Path file, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            }
+        }
+
+        private void scan() {
+            ByteBuffer records = buffer.duplicate();
+            while (records.remaining() >= HEADER) {
+                int start = records.position();
+                int keyLength = records.getInt();
+                int length = records.getInt();
+                long lastModified = records.getLong();
+                int crc = records.getInt();
+                if (keyLength <= 0 || length < TOMBSTONE || (long) keyLength + Math.max(length, 0) > records.remaining()) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                records.get(key);
+                ByteBuffer bytes = null;
+                if (length != TOMBSTONE) {
+                    bytes = records.slice();
+                    bytes.limit(length);
+                    records.position(records.position() + length);
+                }
+                if (checksum(key, bytes) != crc) {
+                    break;
+                }
+                this.index(new String(key, StandardCharsets.UTF_8), new Entry(start + HEADER + keyLength, length, lastModified,
+                    records.position() - start));
+                position = records.position();
+            }
+        }
+
+        /**
+         * Append a record, a tombstone if the bytes are null.
+         *
+         * @return false if the segment has no room left for the record
+         */
+        private boolean append(String key, ByteBuffer bytes, long lastModified) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int length = bytes == null ? TOMBSTONE : bytes.remaining();
+            int size = HEADER + keyBytes.length + Math.max(length, 0);
+            if (size > buffer.capacity() - position) {
+                return false;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.position(position);
+            record.putInt(keyBytes.length).putInt(length).putLong(lastModified).putInt(checksum(keyBytes, bytes)).put(keyBytes);
+            if (bytes != null) {
+                record.put(bytes.duplicate());
+            }
+            this.index(key, new Entry(position + HEADER + keyBytes.length, length, lastModified, size));
+            position += size;
+            return true;
+        }
+
+        private void index(String key, Entry entry) {
+            Entry previous;
+            if (entry.length == TOMBSTONE) {
+                previous = index.remove(key);
+                deadBytes += entry.size;
+            } else {
+                previous = index.put(key, entry);
+            }
+            if (previous != null) {
+                deadBytes += previous.size;
+            }
+        }
+
+        private ByteBuffer slice(Entry entry) {
+            ByteBuffer bytes = buffer.duplicate();
+            bytes.position(entry.offset);
+            bytes.limit(entry.offset + entry.length);
+            return bytes.slice();
+        }
+
+        private static int checksum(byte[] key, ByteBuffer bytes) {
+            CRC32 crc = new CRC32();
+            crc.update(key);
+            if (bytes != null) {
+                crc.update(bytes.duplicate());
+            }
+            return (int) crc.getValue();
+        }
+    }
+}
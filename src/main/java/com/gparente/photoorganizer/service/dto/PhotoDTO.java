@@ -3,6 +3,7 @@ package com.gparente.photoorganizer.service.dto;
 import com.gparente.photoorganizer.domain.Photo;
 import com.gparente.photoorganizer.domain.Tag;
 import com.gparente.photoorganizer.domain.User;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.Objects;
@@ -19,10 +20,13 @@ public class PhotoDTO {
     private String path;
     private String type;
     private Instant dateCreated;
+    private String contentHash;
+    private DerivativeStatus derivativeStatus;
     private Set<Tag> tags = new HashSet<>();
     private User user;
 
     // Photo DTO fields
+    private String thumbnailUrl;
     private String thumbnail;
     private String image;
 
@@ -34,6 +38,8 @@ public class PhotoDTO {
         this.path = photo.getPath();
         this.type = photo.getType();
         this.dateCreated = photo.getDateCreated();
+        this.contentHash = photo.getContentHash();
+        this.derivativeStatus = photo.getDerivativeStatus();
         this.tags = photo.getTags();
         this.user = photo.getUser();
     }
@@ -79,6 +85,22 @@ public class PhotoDTO {
         this.dateCreated = dateCreated;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public DerivativeStatus getDerivativeStatus() {
+        return derivativeStatus;
+    }
+
+    public void setDerivativeStatus(DerivativeStatus derivativeStatus) {
+        this.derivativeStatus = derivativeStatus;
+    }
+
     public Set<Tag> getTags() {
         return tags;
     }
@@ -95,6 +117,14 @@ public class PhotoDTO {
         this.user = user;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
     public String getThumbnail() {
         return thumbnail;
     }
@@ -139,6 +169,8 @@ public class PhotoDTO {
             ", path='" + getPath() + "'" +
             ", type='" + getType() + "'" +
             ", dateCreated='" + getDateCreated() + "'" +
+            ", contentHash='" + getContentHash() + "'" +
+            ", derivativeStatus='" + getDerivativeStatus() + "'" +
             "}";
     }
 }
@@ -0,0 +1,103 @@
+package com.gparente.photoorganizer.service.dto;
+
+import java.time.Instant;
+
+/**
+ * A DTO representing the progress of an import of the photos of a directory tree.
+ */
+public class PhotoImportDTO {
+
+    private String directory;
+
+    private boolean running;
+
+    private int total;
+
+    private int alreadyImported;
+
+    private int imported;
+
+    private int failed;
+
+    private Instant startDate;
+
+    private Instant endDate;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getAlreadyImported() {
+        return alreadyImported;
+    }
+
+    public void setAlreadyImported(int alreadyImported) {
+        this.alreadyImported = alreadyImported;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public Instant getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Instant startDate) {
+        this.startDate = startDate;
+    }
+
+    public Instant getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(Instant endDate) {
+        this.endDate = endDate;
+    }
+
+    @Override
+    public String toString() {
+        return "PhotoImportDTO{" +
+            "directory='" + directory + "'" +
+            ", running=" + running +
+            ", total=" + total +
+            ", alreadyImported=" + alreadyImported +
+            ", imported=" + imported +
+            ", failed=" + failed +
+            ", startDate=" + startDate +
+            ", endDate=" + endDate +
+            "}";
+    }
+}
@@ -0,0 +1,41 @@
+package com.gparente.photoorganizer.service.dto;
+
+import com.gparente.photoorganizer.domain.Photo;
+
+import java.util.List;
+
+/**
+ * A DTO representing a page of the photo timeline, with the cursor of the next page.
+ */
+public class PhotoTimelineDTO {
+
+    private final List<Photo> photos;
+
+    private final String nextCursor;
+
+    public PhotoTimelineDTO(List<Photo> photos, String nextCursor) {
+        this.photos = photos;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Photo> getPhotos() {
+        return photos;
+    }
+
+    /**
+     * The cursor of the next page.
+     *
+     * @return the cursor of the next page, null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "PhotoTimelineDTO{" +
+            "photos=" + photos.size() +
+            ", nextCursor='" + nextCursor + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,71 @@
+package com.gparente.photoorganizer.service.dto;
+
+/**
+ * A DTO representing the result of the upload of one file of a batch upload.
+ * <p>
+ * The photo id is set when the photo is created, the error otherwise.
+ */
+public class PhotoUploadResultDTO {
+
+    private String fileName;
+
+    private Long photoId;
+
+    private String contentHash;
+
+    private String error;
+
+    public PhotoUploadResultDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public PhotoUploadResultDTO(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Long getPhotoId() {
+        return photoId;
+    }
+
+    public void setPhotoId(Long photoId) {
+        this.photoId = photoId;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public boolean isCreated() {
+        return photoId != null;
+    }
+
+    @Override
+    public String toString() {
+        return "PhotoUploadResultDTO{" +
+            "fileName='" + fileName + "'" +
+            ", photoId=" + photoId +
+            ", contentHash='" + contentHash + "'" +
+            ", error='" + error + "'" +
+            "}";
+    }
+}
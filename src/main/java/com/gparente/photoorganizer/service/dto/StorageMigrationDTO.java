@@ -0,0 +1,46 @@
+package com.gparente.photoorganizer.service.dto;
+
+/**
+ * A DTO representing the result of a migration of the legacy photos to the photo storage.
+ */
+public class StorageMigrationDTO {
+
+    private int migrated;
+
+    private int missing;
+
+    private int failed;
+
+    public int getMigrated() {
+        return migrated;
+    }
+
+    public void setMigrated(int migrated) {
+        this.migrated = migrated;
+    }
+
+    public int getMissing() {
+        return missing;
+    }
+
+    public void setMissing(int missing) {
+        this.missing = missing;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageMigrationDTO{" +
+            "migrated=" + migrated +
+            ", missing=" + missing +
+            ", failed=" + failed +
+            "}";
+    }
+}
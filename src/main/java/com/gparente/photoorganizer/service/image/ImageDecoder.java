@@ -0,0 +1,91 @@
+package com.gparente.photoorganizer.service.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Decoder of the photos for the derivatives generation.
+ *
+ * <p>
+ * A derivative never needs all the pixels of a large photo, so the image is decoded with a source subsampling:
+ * the reader only keeps one pixel out of n in each direction, and the full resolution raster is never allocated.
+ * The subsampling is a plain decimation, so the image is kept at least twice as large as the target,
+ * and {@link ImageResampler} filters it down to the target size. For a chain of derivatives, the largest one
+ * made first and each next one resized from the previous, the image is only kept as large as the largest target:
+ * the smaller derivatives are filtered from it, so a 20 megapixels photo is not decoded in full for a 2048 pixels one.
+ */
+public final class ImageDecoder {
+
+    /**
+     * The decoded image is at least this factor larger than the target.
+     */
+    private static final int MIN_OVERSAMPLING = 2;
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Decode an image file, skipping the pixels not needed for a derivative of the given width.
+     *
+     * @param file the image file
+     * @param targetWidth the width of the derivative which will be made from the decoded image
+     * @return the decoded image, at least {@code 2 * targetWidth} wide unless the original is smaller
+     * @throws IOException if the file can't be read or its format is not supported
+     */
+    public static BufferedImage decodeForWidth(Path file, int targetWidth) throws IOException {
+        return decode(file, targetWidth, MIN_OVERSAMPLING);
+    }
+
+    /**
+     * Decode an image file for a chain of derivatives, skipping the pixels not needed for the largest one.
+     *
+     * @param file the image file
+     * @param largestWidth the width of the largest derivative, made first, the smaller ones being resized from it
+     * @return the decoded image, at least {@code largestWidth} wide unless the original is smaller
+     * @throws IOException if the file can't be read or its format is not supported
+     */
+    public static BufferedImage decodeForWidths(Path file, int largestWidth) throws IOException {
+        return decode(file, largestWidth, 1);
+    }
+
+    private static BufferedImage decode(Path file, int targetWidth, int oversampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            if (input == null) {
+                throw new IOException("Can't read the image file " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader found for " + file);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // The size is read from the header, before any pixel is decoded
+                int width = reader.getWidth(0);
+                int subsampling = getSubsampling(width, targetWidth, oversampling);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * The largest subsampling keeping the decoded image at least {@code oversampling} times the target width.
+     */
+    static int getSubsampling(int width, int targetWidth, int oversampling) {
+        return Math.max(1, width / (targetWidth * oversampling));
+    }
+}
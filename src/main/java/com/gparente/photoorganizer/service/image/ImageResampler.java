@@ -0,0 +1,264 @@
+package com.gparente.photoorganizer.service.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * Resampling engine for the photo derivatives, like the thumbnails.
+ *
+ * <p>
+ * An image is first halved with a 2x2 box filter while it stays at least twice the target size,
+ * which is exact and cheap, then the last step to the target size is done with a separable Lanczos filter.
+ * All the work is done on packed RGB {@code int[]} rasters, the target being written straight into the
+ * {@link DataBufferInt} of the returned image, so there is no intermediate {@code Image} nor any {@code Graphics2D} copy.
+ *
+ * <p>
+ * The alpha channel is dropped, the returned images are {@link BufferedImage#TYPE_INT_RGB}.
+ */
+public final class ImageResampler {
+
+    private static final int LANCZOS_LOBES = 3;
+
+    /**
+     * The filter weights are fixed point integers, with this number of fractional bits.
+     */
+    private static final int WEIGHT_BITS = 14;
+
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private static final int WEIGHT_HALF = 1 << (WEIGHT_BITS - 1);
+
+    private ImageResampler() {
+    }
+
+    /**
+     * Resize an image to the given width, keeping its aspect ratio.
+     *
+     * @param source the image to resize
+     * @param targetWidth the width of the resized image
+     * @return the resized image
+     */
+    public static BufferedImage resizeToWidth(BufferedImage source, int targetWidth) {
+        int targetHeight = (int) Math.max(1, Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        return resize(source, targetWidth, targetHeight);
+    }
+
+    /**
+     * Resize an image to the given size.
+     *
+     * @param source the image to resize
+     * @param targetWidth the width of the resized image
+     * @param targetHeight the height of the resized image
+     * @return the resized image
+     */
+    public static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Invalid target size " + targetWidth + "x" + targetHeight);
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] pixels = toRgbPixels(source);
+
+        while (width >= targetWidth * 2 && height >= targetHeight * 2) {
+            pixels = halve(pixels, width, height);
+            width /= 2;
+            height /= 2;
+        }
+
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        int[] targetPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        if (width == targetWidth && height == targetHeight) {
+            System.arraycopy(pixels, 0, targetPixels, 0, targetPixels.length);
+        } else {
+            int[] rows = resizeRows(pixels, width, height, targetWidth);
+            resizeColumns(rows, targetWidth, height, targetPixels, targetHeight);
+        }
+        return target;
+    }
+
+    /**
+     * Get the pixels of an image as packed RGB values, row by row.
+     * <p>
+     * The rasters of the usual decoded images are read directly, the returned array may be the image raster itself.
+     */
+    static int[] toRgbPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        SampleModel sampleModel = image.getSampleModel();
+        boolean standalone = image.getRaster().getParent() == null
+            && image.getRaster().getSampleModelTranslateX() == 0 && image.getRaster().getSampleModelTranslateY() == 0;
+
+        if (standalone && (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)
+            && ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == width) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            if (data.length == width * height) {
+                return data;
+            }
+        }
+
+        if (standalone && image.getType() == BufferedImage.TYPE_3BYTE_BGR
+            && ((ComponentSampleModel) sampleModel).getScanlineStride() == width * 3) {
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int[] pixels = new int[width * height];
+            for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+                pixels[i] = (data[j + 2] & 0xff) << 16 | (data[j + 1] & 0xff) << 8 | (data[j] & 0xff);
+            }
+            return pixels;
+        }
+
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Halve an image with a 2x2 box filter, an odd last row or column being dropped.
+     */
+    private static int[] halve(int[] pixels, int width, int height) {
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        int[] result = new int[halfWidth * halfHeight];
+
+        for (int y = 0; y < halfHeight; y++) {
+            int row0 = 2 * y * width;
+            int row1 = row0 + width;
+            int out = y * halfWidth;
+            for (int x = 0; x < halfWidth; x++) {
+                int a = pixels[row0 + 2 * x];
+                int b = pixels[row0 + 2 * x + 1];
+                int c = pixels[row1 + 2 * x];
+                int d = pixels[row1 + 2 * x + 1];
+                // Red and blue are summed in the same int, they can't overflow on each other
+                int rb = (a & 0xff00ff) + (b & 0xff00ff) + (c & 0xff00ff) + (d & 0xff00ff) + 0x020002;
+                int g = (a & 0xff00) + (b & 0xff00) + (c & 0xff00) + (d & 0xff00) + 0x000200;
+                result[out + x] = (rb >>> 2) & 0xff00ff | (g >>> 2) & 0xff00;
+            }
+        }
+        return result;
+    }
+
+    private static int[] resizeRows(int[] pixels, int width, int height, int targetWidth) {
+        Kernel kernel = new Kernel(width, targetWidth);
+        int[] result = new int[targetWidth * height];
+
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int out = y * targetWidth;
+            for (int x = 0; x < targetWidth; x++) {
+                int[] weights = kernel.weights[x];
+                int start = row + kernel.starts[x];
+                int r = WEIGHT_HALF;
+                int g = WEIGHT_HALF;
+                int b = WEIGHT_HALF;
+                for (int k = 0; k < weights.length; k++) {
+                    int pixel = pixels[start + k];
+                    int weight = weights[k];
+                    r += (pixel >> 16 & 0xff) * weight;
+                    g += (pixel >> 8 & 0xff) * weight;
+                    b += (pixel & 0xff) * weight;
+                }
+                result[out + x] = clamp(r >> WEIGHT_BITS) << 16 | clamp(g >> WEIGHT_BITS) << 8 | clamp(b >> WEIGHT_BITS);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The source rows are accumulated one after the other, so that the raster is read sequentially.
+     */
+    private static void resizeColumns(int[] pixels, int width, int height, int[] target, int targetHeight) {
+        Kernel kernel = new Kernel(height, targetHeight);
+        int[] r = new int[width];
+        int[] g = new int[width];
+        int[] b = new int[width];
+
+        for (int y = 0; y < targetHeight; y++) {
+            int[] weights = kernel.weights[y];
+            Arrays.fill(r, WEIGHT_HALF);
+            Arrays.fill(g, WEIGHT_HALF);
+            Arrays.fill(b, WEIGHT_HALF);
+            for (int k = 0; k < weights.length; k++) {
+                int row = (kernel.starts[y] + k) * width;
+                int weight = weights[k];
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[row + x];
+                    r[x] += (pixel >> 16 & 0xff) * weight;
+                    g[x] += (pixel >> 8 & 0xff) * weight;
+                    b[x] += (pixel & 0xff) * weight;
+                }
+            }
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                target[out + x] = clamp(r[x] >> WEIGHT_BITS) << 16 | clamp(g[x] >> WEIGHT_BITS) << 8 | clamp(b[x] >> WEIGHT_BITS);
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static double lanczos(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        if (x <= -LANCZOS_LOBES || x >= LANCZOS_LOBES) {
+            return 0;
+        }
+        double pix = Math.PI * x;
+        return LANCZOS_LOBES * Math.sin(pix) * Math.sin(pix / LANCZOS_LOBES) / (pix * pix);
+    }
+
+    /**
+     * The Lanczos weights of a resize along one axis: for each target position, the first source position
+     * it reads and the weights of the source positions from it, which sum to {@link #WEIGHT_ONE}.
+     */
+    private static final class Kernel {
+
+        private final int[] starts;
+
+        private final int[][] weights;
+
+        private Kernel(int size, int targetSize) {
+            double scale = (double) size / targetSize;
+            // When downscaling the filter is stretched, to average all the source pixels under a target pixel
+            double filterScale = Math.max(1, scale);
+            double support = LANCZOS_LOBES * filterScale;
+
+            starts = new int[targetSize];
+            weights = new int[targetSize][];
+            for (int i = 0; i < targetSize; i++) {
+                double center = (i + 0.5) * scale;
+                int start = Math.max(0, (int) Math.floor(center - support));
+                int end = Math.min(size - 1, (int) Math.ceil(center + support));
+
+                double[] values = new double[end - start + 1];
+                double sum = 0;
+                for (int j = start; j <= end; j++) {
+                    values[j - start] = lanczos((j + 0.5 - center) / filterScale);
+                    sum += values[j - start];
+                }
+
+                int[] fixed = new int[values.length];
+                int fixedSum = 0;
+                int largest = 0;
+                for (int j = 0; j < values.length; j++) {
+                    fixed[j] = (int) Math.round(values[j] / sum * WEIGHT_ONE);
+                    fixedSum += fixed[j];
+                    if (fixed[j] > fixed[largest]) {
+                        largest = j;
+                    }
+                }
+                // The rounding error goes to the largest weight, so that a flat area stays flat
+                fixed[largest] += WEIGHT_ONE - fixedSum;
+
+                starts[i] = start;
+                weights[i] = fixed;
+            }
+        }
+    }
+}
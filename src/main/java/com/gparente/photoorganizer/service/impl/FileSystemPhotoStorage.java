@@ -0,0 +1,292 @@
+package com.gparente.photoorganizer.service.impl;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.service.PhotoStorage;
+import com.gparente.photoorganizer.service.util.HashUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Photo storage on the local file system.
+ * <p>
+ * A file is stored under the SHA-256 of the original, sharded in two levels of directories by the first hex digits
+ * of the hash: the original "abcdef...jpg" is stored as "ab/cd/abcdef...jpg" and its thumbnail as
+ * "ab/cd/abcdef...-thumbnail.jpg". A directory never holds more than a few files per 65536 photos.
+ * <p>
+ * The files of a content are stored and deleted under a lock of their original. The deletions of the unused files
+ * wait in memory for "application.storage.delete-delay-seconds", so the files of a photo deleted before a restart
+ * may be left in the storage, never the files of a photo still used.
+ */
+@Service
+public class FileSystemPhotoStorage implements PhotoStorage {
+
+    private final Logger log = LoggerFactory.getLogger(FileSystemPhotoStorage.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path basePath;
+
+    private final Path legacyPath;
+
+    private final long deleteDelayMillis;
+
+    /**
+     * The locks of the contents, striped by original file.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * The deletions waiting for the end of their delay, by original file. A store of the same content cancels them.
+     */
+    private final Map<Path, PendingDeletion> pendingDeletions = new ConcurrentHashMap<>();
+
+    public FileSystemPhotoStorage(ApplicationProperties applicationProperties) {
+        this.basePath = Paths.get(applicationProperties.getStorage().getBasePath());
+        this.legacyPath = Paths.get(applicationProperties.getStorage().getLegacyPath());
+        this.deleteDelayMillis = TimeUnit.SECONDS.toMillis(applicationProperties.getStorage().getDeleteDelaySeconds());
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void store(Photo photo, InputStream content) throws IOException {
+        // The temporary file is in the storage, so that it can be moved atomically to its final place
+        Files.createDirectories(basePath);
+        Path tempFile = Files.createTempFile(basePath, "upload-", ".tmp");
+        try {
+            MessageDigest digest = HashUtil.newDigest();
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String contentHash = HashUtil.toHex(digest.digest());
+            String path = this.getPath(contentHash, photo.getType());
+            Path file = basePath.resolve(path);
+
+            synchronized (this.getLock(file)) {
+                pendingDeletions.remove(file);
+                if (Files.exists(file)) {
+                    log.debug("Content of photo {} already stored in {}", photo.getId(), path);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    this.moveInPlace(tempFile, file);
+                }
+            }
+
+            photo.setContentHash(contentHash);
+            photo.setPath(path);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public void store(Photo photo, Path file) throws IOException {
+        String contentHash = this.hash(file);
+        String path = this.getPath(contentHash, photo.getType());
+        Path target = basePath.resolve(path);
+
+        synchronized (this.getLock(target)) {
+            pendingDeletions.remove(target);
+            this.linkOrCopy(file, target);
+        }
+
+        photo.setContentHash(contentHash);
+        photo.setPath(path);
+    }
+
+    @Override
+    public Path getOriginal(Photo photo) {
+        if (photo.getPath() == null) {
+            return legacyPath.resolve(photo.getFileName() + "." + photo.getType());
+        }
+        return basePath.resolve(photo.getPath());
+    }
+
+    @Override
+    public Path getDerivative(Photo photo, String name) {
+        if (photo.getPath() == null) {
+            return legacyPath.resolve(photo.getFileName() + "-" + name + "." + photo.getType());
+        }
+        return basePath.resolve(this.getDerivativePath(photo.getPath(), name));
+    }
+
+    @Override
+    public void delete(Photo photo, Collection<String> derivativeNames) {
+        Path original = this.getOriginal(photo);
+        synchronized (this.getLock(original)) {
+            for (String name : derivativeNames) {
+                this.delete(this.getDerivative(photo, name));
+            }
+            this.delete(original);
+        }
+    }
+
+    @Override
+    public void deleteUnused(Photo photo, Collection<String> derivativeNames, Predicate<Photo> isUsed) {
+        Path original = this.getOriginal(photo);
+        Photo files = new Photo().fileName(photo.getFileName()).type(photo.getType()).path(photo.getPath())
+            .contentHash(photo.getContentHash());
+        PendingDeletion deletion = new PendingDeletion(files, derivativeNames, isUsed, System.currentTimeMillis() + deleteDelayMillis);
+        synchronized (this.getLock(original)) {
+            pendingDeletions.put(original, deletion);
+        }
+        if (deleteDelayMillis <= 0) {
+            this.deleteIfUnused(original, deletion);
+        }
+    }
+
+    /**
+     * Delete the unused files whose delay is over.
+     * <p>
+     * This is scheduled to get fired every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void deletePendingFiles() {
+        long now = System.currentTimeMillis();
+        pendingDeletions.forEach((original, deletion) -> {
+            if (deletion.deleteAt <= now) {
+                this.deleteIfUnused(original, deletion);
+            }
+        });
+    }
+
+    @Override
+    public void migrate(Photo photo, Collection<String> derivativeNames) throws IOException {
+        // The legacy files are resolved before the path of the photo is set
+        Map<String, Path> legacyDerivatives = new LinkedHashMap<>();
+        for (String name : derivativeNames) {
+            legacyDerivatives.put(name, this.getDerivative(photo, name));
+        }
+
+        this.store(photo, this.getOriginal(photo));
+        Path original = this.getOriginal(photo);
+        synchronized (this.getLock(original)) {
+            pendingDeletions.remove(original);
+            for (Map.Entry<String, Path> legacyDerivative : legacyDerivatives.entrySet()) {
+                if (Files.exists(legacyDerivative.getValue())) {
+                    this.linkOrCopy(legacyDerivative.getValue(), this.getDerivative(photo, legacyDerivative.getKey()));
+                }
+            }
+        }
+    }
+
+    private void deleteIfUnused(Path original, PendingDeletion deletion) {
+        synchronized (this.getLock(original)) {
+            // Cancelled by a store of the same content, or replaced by a later deletion
+            if (!pendingDeletions.remove(original, deletion)) {
+                return;
+            }
+            if (deletion.isUsed.test(deletion.photo)) {
+                log.info("Files of photo {} are still used by other photos.", deletion.photo);
+                return;
+            }
+            for (String name : deletion.derivativeNames) {
+                this.delete(this.getDerivative(deletion.photo, name));
+            }
+            this.delete(original);
+        }
+    }
+
+    private Object getLock(Path original) {
+        return locks[Math.floorMod(original.hashCode(), LOCK_STRIPES)];
+    }
+
+    private String hash(Path file) throws IOException {
+        MessageDigest digest = HashUtil.newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // The digest is updated by the stream
+            }
+        }
+        return HashUtil.toHex(digest.digest());
+    }
+
+    private String getPath(String contentHash, String type) {
+        return contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4) + "/" + contentHash + "." + type;
+    }
+
+    private String getDerivativePath(String path, String name) {
+        int extension = path.lastIndexOf('.');
+        if (extension < 0) {
+            return path + "-" + name;
+        }
+        return path.substring(0, extension) + "-" + name + path.substring(extension);
+    }
+
+    private void linkOrCopy(Path source, Path target) throws IOException {
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // Stored meanwhile by an upload of the same content
+        } catch (UnsupportedOperationException | IOException e) {
+            Path tempFile = Files.createTempFile(target.getParent(), source.getFileName().toString(), ".tmp");
+            try {
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                this.moveInPlace(tempFile, target);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Readers never see a partially written file, it is written to a temporary file and moved in place.
+     */
+    private void moveInPlace(Path tempFile, Path file) throws IOException {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void delete(Path file) {
+        try {
+            if (Files.deleteIfExists(file)) {
+                log.info("File {} is deleted", file);
+            }
+        } catch (IOException e) {
+            log.warn("Error in deleting file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class PendingDeletion {
+
+        private final Photo photo;
+
+        private final Collection<String> derivativeNames;
+
+        private final Predicate<Photo> isUsed;
+
+        private final long deleteAt;
+
+        private PendingDeletion(Photo photo, Collection<String> derivativeNames, Predicate<Photo> isUsed, long deleteAt) {
+            this.photo = photo;
+            this.derivativeNames = derivativeNames;
+            this.isUsed = isUsed;
+            this.deleteAt = deleteAt;
+        }
+    }
+}
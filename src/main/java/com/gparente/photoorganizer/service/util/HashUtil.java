@@ -0,0 +1,56 @@
+package com.gparente.photoorganizer.service.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class for computing content hashes.
+ */
+public final class HashUtil {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private HashUtil() {
+    }
+
+    /**
+     * Create a new digest for the content hash algorithm.
+     *
+     * @return a SHA-256 message digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * Compute the content hash of some bytes.
+     *
+     * @param bytes the bytes to hash
+     * @return the hexadecimal SHA-256 of the bytes
+     */
+    public static String sha256Hex(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    /**
+     * Convert a digest to its lower case hexadecimal representation.
+     *
+     * @param digest the digest bytes
+     * @return the hexadecimal string
+     */
+    public static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
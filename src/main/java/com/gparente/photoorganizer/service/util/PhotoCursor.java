@@ -0,0 +1,79 @@
+package com.gparente.photoorganizer.service.util;
+
+import com.gparente.photoorganizer.domain.Photo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in the photo timeline, after which the next page starts.
+ * <p>
+ * The timeline is ordered by creation date then id, the newest first, so a position is the date and the id of
+ * the last photo of a page. It is exchanged with the clients as an opaque token.
+ */
+public final class PhotoCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final Instant dateCreated;
+
+    private final Long id;
+
+    private PhotoCursor(Instant dateCreated, Long id) {
+        this.dateCreated = dateCreated;
+        this.id = id;
+    }
+
+    /**
+     * The position of a photo.
+     *
+     * @param photo the photo
+     * @return the position of the photo
+     */
+    public static PhotoCursor of(Photo photo) {
+        return new PhotoCursor(photo.getDateCreated(), photo.getId());
+    }
+
+    /**
+     * Read a position from its token.
+     *
+     * @param token the token
+     * @return the position of the token
+     * @throws IllegalArgumentException if the token is not a valid position
+     */
+    public static PhotoCursor decode(String token) {
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = cursor.lastIndexOf(SEPARATOR);
+            String date = cursor.substring(0, separator);
+            Long id = Long.valueOf(cursor.substring(separator + 1));
+            return new PhotoCursor(date.isEmpty() ? null : Instant.parse(date), id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+    }
+
+    /**
+     * Write the position as a token.
+     *
+     * @return the token, safe in URLs
+     */
+    public String encode() {
+        String cursor = (dateCreated == null ? "" : dateCreated.toString()) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The creation date of the photo, null for the photos without a date, which come last in the timeline.
+     *
+     * @return the creation date
+     */
+    public Instant getDateCreated() {
+        return dateCreated;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
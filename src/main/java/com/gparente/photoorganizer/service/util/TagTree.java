@@ -0,0 +1,141 @@
+package com.gparente.photoorganizer.service.util;
+
+import com.gparente.photoorganizer.domain.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the tag tree, navigated without the database.
+ * <p>
+ * The ids are sorted in an array and the tags are found by binary search. The parent of each tag is in an array of ids
+ * aligned with them, and the children of all the tags are in a single array of ids, sorted by parent then by id,
+ * the children of a tag starting at its offset.
+ * <p>
+ * The tags are detached copies, with their parent chain and their user but not their photos, shared by all the readers
+ * of the snapshot: they must not be changed nor saved.
+ */
+public final class TagTree {
+
+    private static final long NONE = -1L;
+
+    private static final String ROOT = "ROOT";
+
+    private final long[] ids;
+
+    private final Tag[] tags;
+
+    private final int[] childOffsets;
+
+    private final long[] childIds;
+
+    private final int root;
+
+    private TagTree(long[] ids, Tag[] tags, int[] childOffsets, long[] childIds, int root) {
+        this.ids = ids;
+        this.tags = tags;
+        this.childOffsets = childOffsets;
+        this.childIds = childIds;
+        this.root = root;
+    }
+
+    /**
+     * Build the snapshot of some tags.
+     *
+     * @param source the tags, with their parents among them
+     * @return the snapshot of the tags
+     */
+    public static TagTree of(List<Tag> source) {
+        int size = source.size();
+        List<Tag> sorted = new ArrayList<>(source);
+        sorted.sort((first, second) -> Long.compare(first.getId(), second.getId()));
+
+        long[] ids = new long[size];
+        Tag[] tags = new Tag[size];
+        for (int i = 0; i < size; i++) {
+            Tag tag = sorted.get(i);
+            ids[i] = tag.getId();
+            tags[i] = new Tag().name(tag.getName()).type(tag.getType()).user(tag.getUser()).photos(null);
+            tags[i].setId(tag.getId());
+        }
+
+        long[] parentIds = new long[size];
+        int[] childOffsets = new int[size + 1];
+        int root = -1;
+        for (int i = 0; i < size; i++) {
+            Tag parentTag = sorted.get(i).getParentTag();
+            int parent = parentTag == null ? -1 : Arrays.binarySearch(ids, parentTag.getId());
+            parentIds[i] = parent < 0 ? NONE : ids[parent];
+            if (parent >= 0) {
+                tags[i].setParentTag(tags[parent]);
+                childOffsets[parent + 1]++;
+            }
+            if (root < 0 && ROOT.equals(tags[i].getName())) {
+                root = i;
+            }
+        }
+
+        // The children are counted per parent, then placed from the offset of their parent, in the order of their ids
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+        long[] childIds = new long[childOffsets[size]];
+        int[] next = Arrays.copyOf(childOffsets, size);
+        for (int i = 0; i < size; i++) {
+            if (parentIds[i] != NONE) {
+                childIds[next[Arrays.binarySearch(ids, parentIds[i])]++] = ids[i];
+            }
+        }
+
+        return new TagTree(ids, tags, childOffsets, childIds, root);
+    }
+
+    /**
+     * The number of tags.
+     *
+     * @return the number of tags
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Get a tag.
+     *
+     * @param id the id of the tag
+     * @return the tag, or null if there is no tag of this id
+     */
+    public Tag getTag(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index < 0 ? null : tags[index];
+    }
+
+    /**
+     * Get the tag named "ROOT".
+     *
+     * @return the root tag, or null if there is none
+     */
+    public Tag getRoot() {
+        return root < 0 ? null : tags[root];
+    }
+
+    /**
+     * Get the children of a tag.
+     *
+     * @param id the id of the tag
+     * @return the children of the tag in the order of their ids, empty if the tag has none or doesn't exist
+     */
+    public List<Tag> getChildren(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<Tag> children = new ArrayList<>(childOffsets[index + 1] - childOffsets[index]);
+        for (int i = childOffsets[index]; i < childOffsets[index + 1]; i++) {
+            children.add(this.getTag(childIds[i]));
+        }
+        return children;
+    }
+}
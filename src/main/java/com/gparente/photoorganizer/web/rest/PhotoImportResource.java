@@ -0,0 +1,79 @@
+package com.gparente.photoorganizer.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.gparente.photoorganizer.domain.User;
+import com.gparente.photoorganizer.repository.UserRepository;
+import com.gparente.photoorganizer.security.AuthoritiesConstants;
+import com.gparente.photoorganizer.security.SecurityUtils;
+import com.gparente.photoorganizer.service.PhotoImportService;
+import com.gparente.photoorganizer.service.dto.PhotoImportDTO;
+import com.gparente.photoorganizer.web.rest.errors.BadRequestAlertException;
+import io.github.jhipster.web.util.ResponseUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Paths;
+
+/**
+ * REST controller for importing the photos of a directory tree on the server.
+ */
+@RestController
+@RequestMapping("/api")
+public class PhotoImportResource {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoImportResource.class);
+
+    private static final String ENTITY_NAME = "photoImport";
+
+    private final PhotoImportService photoImportService;
+
+    private final UserRepository userRepository;
+
+    public PhotoImportResource(PhotoImportService photoImportService, UserRepository userRepository) {
+        this.photoImportService = photoImportService;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * POST  /photos/import : start the import of the photos of a directory tree on the server.
+     * <p>
+     * The import runs in background, its progress is given by GET /photos/import.
+     * Starting again an interrupted import of the same directory resumes it.
+     *
+     * @param directory the path of the directory on the server
+     * @return the ResponseEntity with status 202 (Accepted) and with body the progress of the import,
+     * or with status 400 (Bad Request) if the directory doesn't exist or an import is already running
+     */
+    @PostMapping("/photos/import")
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<PhotoImportDTO> startImport(@RequestParam("directory") String directory) {
+        log.debug("REST request to import the photos of directory : {}", directory);
+        User user = SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneByLogin).orElse(null);
+        try {
+            return ResponseEntity.accepted().body(photoImportService.startImport(Paths.get(directory), user));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "directorynotfound");
+        } catch (IllegalStateException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "importrunning");
+        }
+    }
+
+    /**
+     * GET  /photos/import : get the progress of the last import.
+     *
+     * @return the ResponseEntity with status 200 (OK) and with body the progress of the import,
+     * or with status 404 (Not Found) if no import was started
+     */
+    @GetMapping("/photos/import")
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<PhotoImportDTO> getImport() {
+        log.debug("REST request to get the progress of the photo import");
+        return ResponseUtil.wrapOrNotFound(photoImportService.getImport());
+    }
+}
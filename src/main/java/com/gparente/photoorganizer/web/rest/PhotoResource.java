@@ -1,36 +1,56 @@
 package com.gparente.photoorganizer.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
+import com.gparente.photoorganizer.config.ApplicationProperties;
 import com.gparente.photoorganizer.domain.Photo;
 
 import com.gparente.photoorganizer.domain.Tag;
 import com.gparente.photoorganizer.domain.User;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
 import com.gparente.photoorganizer.repository.PhotoRepository;
 import com.gparente.photoorganizer.repository.TagRepository;
 import com.gparente.photoorganizer.repository.UserRepository;
+import com.gparente.photoorganizer.service.PageCountService;
+import com.gparente.photoorganizer.service.PhotoDerivativeService;
+import com.gparente.photoorganizer.service.PhotoService;
+import com.gparente.photoorganizer.service.PhotoStorage;
+import com.gparente.photoorganizer.service.TagTreeService;
+import com.gparente.photoorganizer.service.ThumbnailCache;
 import com.gparente.photoorganizer.service.dto.PhotoDTO;
+import com.gparente.photoorganizer.service.dto.PhotoTimelineDTO;
+import com.gparente.photoorganizer.service.dto.PhotoUploadResultDTO;
+import com.gparente.photoorganizer.service.util.TagTree;
 import com.gparente.photoorganizer.web.rest.errors.BadRequestAlertException;
+import com.gparente.photoorganizer.web.rest.util.FileResponseUtil;
 import com.gparente.photoorganizer.web.rest.util.HeaderUtil;
 import com.gparente.photoorganizer.web.rest.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
 
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * REST controller for managing Photo.
@@ -41,22 +61,55 @@ public class PhotoResource {
 
     private final Logger log = LoggerFactory.getLogger(PhotoResource.class);
 
-    private static final String PHOTO_BASE_PATH = "source";
-
     private static final String ENTITY_NAME = "photo";
 
+    /**
+     * Cache directives of the versioned thumbnails: their URL changes with the content, so they never need a revalidation.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL =
+        CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().getHeaderValue() + ", immutable";
+
+    private static final int MAX_TIMELINE_SIZE = 100;
+
+    private static final int MAX_THUMBNAILS = 100;
+
+    private static final String REVALIDATE_CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
     private final PhotoRepository photoRepository;
     private final TagRepository tagRepository;
     private final UserRepository userRepository;
-
-    public PhotoResource(PhotoRepository photoRepository, TagRepository tagRepository, UserRepository userRepository) {
+    private final PhotoStorage photoStorage;
+    private final PhotoDerivativeService photoDerivativeService;
+    private final PhotoService photoService;
+    private final PageCountService pageCountService;
+    private final TagTreeService tagTreeService;
+    private final ThumbnailCache thumbnailCache;
+    private final ThreadPoolTaskExecutor thumbnailTaskExecutor;
+    private final ApplicationProperties applicationProperties;
+
+    public PhotoResource(PhotoRepository photoRepository, TagRepository tagRepository, UserRepository userRepository,
+                         PhotoStorage photoStorage, PhotoDerivativeService photoDerivativeService,
+                         PhotoService photoService, PageCountService pageCountService,
+                         TagTreeService tagTreeService, ThumbnailCache thumbnailCache,
+                         @Qualifier("thumbnailTaskExecutor") ThreadPoolTaskExecutor thumbnailTaskExecutor,
+                         ApplicationProperties applicationProperties) {
         this.photoRepository = photoRepository;
         this.tagRepository = tagRepository;
         this.userRepository = userRepository;
+        this.photoStorage = photoStorage;
+        this.photoDerivativeService = photoDerivativeService;
+        this.photoService = photoService;
+        this.pageCountService = pageCountService;
+        this.tagTreeService = tagTreeService;
+        this.thumbnailCache = thumbnailCache;
+        this.thumbnailTaskExecutor = thumbnailTaskExecutor;
+        this.applicationProperties = applicationProperties;
     }
 
     /**
      * POST  /photos : Create a new photo.
+     * <p>
+     * The thumbnail of the photo is generated in background, the photo is pending until then.
      *
      * @param image the photo to create
      * @param tagIds the photo to create
@@ -74,6 +127,7 @@ public class PhotoResource {
         log.debug("REST request to save Photo : {}");
 
         Photo photo = this.storeImage(image);
+        photo.setDateCreated(Instant.now());
 
         List<Long> tagIdsLong = new ArrayList<>();
         for (String s: tagIds.split(",")) {
@@ -85,12 +139,43 @@ public class PhotoResource {
         User user = userRepository.findOne(Long.parseLong(userId));
         photo.setUser(user);
         photoRepository.save(photo);
+        photoDerivativeService.generateDerivatives(photo);
 
         return ResponseEntity.created(new URI("/api/photos/" + photo.getId()))
             .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, photo.getId().toString()))
             .body(photo);
     }
 
+    /**
+     * POST  /photos/create/batch : Create a photo for each uploaded file, all with the same tags and user.
+     * <p>
+     * The originals are stored in parallel and the photos saved in batches. A file which can't be stored
+     * doesn't fail the others, its error is reported in its result.
+     *
+     * @param images the photos to create
+     * @param tagIds the comma separated ids of the tags of the photos, may be empty
+     * @param userId the id of the owner of the photos
+     * @return the ResponseEntity with status 200 (OK) and with body the result of each file, in the order of the files
+     */
+    @PostMapping("/photos/create/batch")
+    @Timed
+    public ResponseEntity<List<PhotoUploadResultDTO>> createPhotos(
+        @RequestParam("images") List<MultipartFile> images,
+        @RequestParam(value = "tagIds", defaultValue = "") String tagIds,
+        @RequestParam("userId") Long userId
+    ) {
+        log.debug("REST request to save a batch of {} Photos", images.size());
+
+        List<Long> tagIdsLong = new ArrayList<>();
+        for (String s: tagIds.split(",")) {
+            if (!s.trim().isEmpty()) {
+                tagIdsLong.add(Long.parseLong(s.trim()));
+            }
+        }
+
+        return ResponseEntity.ok(photoService.createPhotos(images, tagIdsLong, userId));
+    }
+
     /**
      * PUT  /photos : Updates an existing photo.
      *
@@ -114,6 +199,7 @@ public class PhotoResource {
         log.debug("REST request to update Photo : {}");
 
         Photo oldPhoto = photoRepository.findOneWithEagerRelationships(Long.parseLong(photoId));
+        Photo replacedFiles = new Photo().fileName(oldPhoto.getFileName()).type(oldPhoto.getType()).path(oldPhoto.getPath());
 
         Photo photo;
         if (image != null) {
@@ -132,6 +218,12 @@ public class PhotoResource {
         User user = userRepository.findOne(Long.parseLong(userId));
         photo.setUser(user);
         photoRepository.save(photo);
+        if (image != null) {
+            photoDerivativeService.generateDerivatives(photo);
+            if (replacedFiles.getPath() != null && !replacedFiles.getPath().equals(photo.getPath())) {
+                photoService.deleteFiles(replacedFiles);
+            }
+        }
 
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, photo.getId().toString()))
@@ -140,58 +232,116 @@ public class PhotoResource {
 
     /**
      * GET  /photos : get all the photos.
+     * <p>
+     * The photos carry the URL of their thumbnail, to be fetched separately.
+     * With "inline" the thumbnails are embedded in the body as Base64 data URIs, as in previous versions of the API.
      *
      * @param pageable the pagination information
+     * @param inline true to embed the thumbnails in the body
      * @return the ResponseEntity with status 200 (OK) and the list of photos in body
      */
     @GetMapping("/photos")
     @Timed
-    public ResponseEntity<List<PhotoDTO>> getAllPhotos(Pageable pageable) {
+    public ResponseEntity<List<PhotoDTO>> getAllPhotos(Pageable pageable, @RequestParam(value = "inline", defaultValue = "false") boolean inline) {
         log.debug("REST request to get a page of Photos");
 
-        Page<Photo> page = photoRepository.findAllWithEagerRelationships(pageable);
-        List<PhotoDTO> photos = new ArrayList<>();
-        PhotoDTO photoDTO;
-
-        for(Photo photo: page.getContent()) {
-            photoDTO = new PhotoDTO(photo);
-            this.loadImage(photoDTO, true);
-            photos.add(photoDTO);
-        }
-        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/photos");
+        Page<Photo> page = photoRepository.findAllWithEagerRelationships(pageable, pageCountService::countPhotos);
+        List<PhotoDTO> photos = this.toPhotoDTOs(page.getContent(), inline);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, this.getListingUrl("/api/photos", inline));
 
         return new ResponseEntity<>(photos, headers, HttpStatus.OK);
     }
 
     /**
-     * GET  /photos : get all the photos.
+     * GET  /photos/tag/:id : get all the photos of the "id" tag.
+     * <p>
+     * The photos carry the URL of their thumbnail, to be fetched separately.
+     * With "inline" the thumbnails are embedded in the body as Base64 data URIs, as in previous versions of the API.
      *
+     * @param id the id of the tag, 0 for the root tag
      * @param pageable the pagination information
-     * @return the ResponseEntity with status 200 (OK) and the list of photos in body
+     * @param inline true to embed the thumbnails in the body
+     * @return the ResponseEntity with status 200 (OK) and the list of photos in body, or with status 404 (Not Found) if the tag doesn't exist
      */
     @GetMapping("/photos/tag/{id}")
     @Timed
-    public ResponseEntity<List<PhotoDTO>> getAllPhotosByTag(@PathVariable Long id, Pageable pageable) {
+    public ResponseEntity<List<PhotoDTO>> getAllPhotosByTag(@PathVariable Long id, Pageable pageable,
+                                                            @RequestParam(value = "inline", defaultValue = "false") boolean inline) {
         log.debug("REST request to get a page of Photos");
 
-        Tag tag;
-        if (id == 0) {
-            tag = tagRepository.findRootTag();
-        } else {
-            tag = tagRepository.findOne(id);
+        TagTree tree = tagTreeService.getTree();
+        Tag tag = id == 0 ? tree.getRoot() : tree.getTag(id);
+        if (tag == null) {
+            return ResponseEntity.notFound().build();
         }
 
-        Page<Photo> page = photoRepository.findAllByTagWithEagerRelationships(tag, pageable);
-        List<PhotoDTO> photos = new ArrayList<>();
-        PhotoDTO photoDTO;
+        Page<Photo> page = photoRepository.findAllByTagWithEagerRelationships(tag, pageable, () -> pageCountService.countPhotosByTag(tag));
+        List<PhotoDTO> photos = this.toPhotoDTOs(page.getContent(), inline);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, this.getListingUrl("/api/photos/tag/" + id, inline));
 
-        for(Photo photo: page.getContent()) {
-            photoDTO = new PhotoDTO(photo);
-            this.loadImage(photoDTO, true);
-            photos.add(photoDTO);
+        return new ResponseEntity<>(photos, headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /photos/tag/:id/subtree : get all the photos of the "id" tag and of its descendants.
+     * <p>
+     * A photo of several tags of the subtree is listed once. The photos carry the URL of their thumbnail,
+     * to be fetched separately, unless "inline" embeds the thumbnails in the body.
+     *
+     * @param id the id of the tag, 0 for the root tag
+     * @param pageable the pagination information
+     * @param inline true to embed the thumbnails in the body
+     * @return the ResponseEntity with status 200 (OK) and the list of photos in body, or with status 404 (Not Found) if the tag doesn't exist
+     */
+    @GetMapping("/photos/tag/{id}/subtree")
+    @Timed
+    public ResponseEntity<List<PhotoDTO>> getAllPhotosBySubtree(@PathVariable Long id, Pageable pageable,
+                                                                @RequestParam(value = "inline", defaultValue = "false") boolean inline) {
+        log.debug("REST request to get a page of the Photos of the subtree of Tag : {}", id);
+
+        TagTree tree = tagTreeService.getTree();
+        Tag tag = id == 0 ? tree.getRoot() : tree.getTag(id);
+        if (tag == null) {
+            return ResponseEntity.notFound().build();
         }
 
-        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/photos");
+        Page<Photo> page = photoRepository.findAllBySubtreeWithEagerRelationships(tag, pageable, () -> pageCountService.countPhotosBySubtree(tag));
+        List<PhotoDTO> photos = this.toPhotoDTOs(page.getContent(), inline);
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, this.getListingUrl("/api/photos/tag/" + id + "/subtree", inline));
+
+        return new ResponseEntity<>(photos, headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET  /photos/timeline : get a page of the photo timeline, the newest photos first.
+     * <p>
+     * Unlike the paged listings, the page is read from a cursor and the photos are not counted,
+     * so any page costs the same. The cursor of the next page is given by the "X-Next-Cursor" header
+     * and by the "next" link, both missing on the last page.
+     *
+     * @param cursor the cursor of the page, none for the first page
+     * @param size the number of photos of the page, at most 100
+     * @param inline true to embed the thumbnails in the body
+     * @return the ResponseEntity with status 200 (OK) and the list of photos in body,
+     * or with status 400 (Bad Request) if the cursor is not valid
+     */
+    @GetMapping("/photos/timeline")
+    @Timed
+    public ResponseEntity<List<PhotoDTO>> getPhotoTimeline(@RequestParam(value = "cursor", required = false) String cursor,
+                                                           @RequestParam(value = "size", defaultValue = "20") int size,
+                                                           @RequestParam(value = "inline", defaultValue = "false") boolean inline) {
+        log.debug("REST request to get a page of the photo timeline");
+
+        int pageSize = Math.max(1, Math.min(size, MAX_TIMELINE_SIZE));
+        PhotoTimelineDTO timeline;
+        try {
+            timeline = photoService.getTimeline(cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        List<PhotoDTO> photos = this.toPhotoDTOs(timeline.getPhotos(), inline);
+        HttpHeaders headers = PaginationUtil.generateCursorHttpHeaders(timeline.getNextCursor(),
+            this.getListingUrl("/api/photos/timeline", inline), pageSize);
 
         return new ResponseEntity<>(photos, headers, HttpStatus.OK);
     }
@@ -210,55 +360,188 @@ public class PhotoResource {
         Photo photo = photoRepository.findOneWithEagerRelationships(id);
 
         PhotoDTO photoDTO = new PhotoDTO(photo);
+        photoDTO.setThumbnailUrl(this.getThumbnailUrl(photo));
 
-        this.loadImage(photoDTO, true);
+        this.loadImage(photo, photoDTO, true);
 
         return ResponseUtil.wrapOrNotFound(Optional.of(photoDTO));
     }
 
     /**
-     * GET  /photos/:id : get the "id" photo.
+     * GET  /photos/:id/image : stream the image file of the "id" photo.
      *
-     * @param id the id of the photo to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the photo, or with status 404 (Not Found)
+     * @param id the id of the photo to retrieve the image
+     * @param requestHeaders the request headers, conditional headers revalidate a cached image
+     * and "Range" and "If-Range" headers ask for some parts of the image only
+     * @return the ResponseEntity with status 200 (OK) and with body the image bytes,
+     * or with status 206 (Partial Content) and with body the requested ranges of the image,
+     * or with status 304 (Not Modified) if the cached image is still valid,
+     * or with status 416 (Requested Range Not Satisfiable) if the requested ranges are outside the image,
+     * or with status 404 (Not Found)
+     * @throws IOException if the image file can't be read
      */
     @GetMapping("/photos/{id}/image")
     @Timed
-    public ResponseEntity<String> getPhotoImage(@PathVariable Long id) throws IOException {
+    public ResponseEntity<StreamingResponseBody> getPhotoImage(@PathVariable Long id, @RequestHeader HttpHeaders requestHeaders) throws IOException {
         log.debug("REST request to get Photo image : {}", id);
 
         Photo photo = photoRepository.findOne(id);
-        PhotoDTO photoDTO = new PhotoDTO(photo);
-
-        this.loadImage(photoDTO, false);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setCacheControl(CacheControl.noCache().getHeaderValue());
+        if (photo == null) {
+            return ResponseEntity.notFound().build();
+        }
 
-        return new ResponseEntity<>(photoDTO.getImage(), headers, HttpStatus.OK);
+        return this.streamImage(photo, photoStorage.getOriginal(photo), "",
+            REVALIDATE_CACHE_CONTROL, requestHeaders);
 
     }
 
     /**
-     * GET  /photos/:id : get the "id" photo.
+     * GET  /photos/:id/thumbnail : stream the thumbnail file of the "id" photo.
      *
-     * @param id the id of the photo to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the photo, or with status 404 (Not Found)
+     * @param id the id of the photo to retrieve the thumbnail
+     * @param requestHeaders the request headers, conditional headers revalidate a cached thumbnail
+     * @return the ResponseEntity with status 200 (OK) and with body the thumbnail bytes,
+     * or with status 202 (Accepted) if the thumbnail is not generated yet,
+     * or with status 304 (Not Modified) if the cached thumbnail is still valid,
+     * or with status 404 (Not Found)
+     * @throws IOException if the thumbnail file can't be read
      */
     @GetMapping("/photos/{id}/thumbnail")
     @Timed
-    public ResponseEntity<String> getPhotoThumbnail(@PathVariable Long id) throws IOException {
+    public ResponseEntity<StreamingResponseBody> getPhotoThumbnail(@PathVariable Long id, @RequestHeader HttpHeaders requestHeaders) throws IOException {
         log.debug("REST request to get Photo thumbnail : {}", id);
 
         Photo photo = photoRepository.findOne(id);
-        PhotoDTO photoDTO = new PhotoDTO(photo);
+        if (photo == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (photo.getDerivativeStatus() == DerivativeStatus.PENDING) {
+            return this.derivativePending();
+        }
+
+        return this.streamThumbnail(photo, REVALIDATE_CACHE_CONTROL, requestHeaders);
+
+    }
 
-        this.loadImage(photoDTO, true);
+    /**
+     * GET  /photos/:id/thumbnail/:hash : stream the thumbnail file of the "id" photo, at the version "hash".
+     * <p>
+     * The content hash in the URL makes the thumbnail immutable, so it can be cached by clients for a long time.
+     *
+     * @param id the id of the photo to retrieve the thumbnail
+     * @param hash the content hash of the photo
+     * @param requestHeaders the request headers, conditional headers revalidate a cached thumbnail
+     * @return the ResponseEntity with status 200 (OK) and with body the thumbnail bytes,
+     * or with status 202 (Accepted) if the thumbnail is not generated yet,
+     * or with status 304 (Not Modified) if the cached thumbnail is still valid,
+     * or with status 404 (Not Found) if the photo doesn't exist or its content hash is not "hash"
+     * @throws IOException if the thumbnail file can't be read
+     */
+    @GetMapping("/photos/{id}/thumbnail/{hash}")
+    @Timed
+    public ResponseEntity<StreamingResponseBody> getPhotoThumbnailVersion(@PathVariable Long id, @PathVariable String hash,
+                                                                          @RequestHeader HttpHeaders requestHeaders) throws IOException {
+        log.debug("REST request to get Photo thumbnail : {}, version : {}", id, hash);
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setCacheControl(CacheControl.noCache().getHeaderValue());
+        Photo photo = photoRepository.findOne(id);
+        if (photo == null || !hash.equals(photo.getContentHash())) {
+            return ResponseEntity.notFound().build();
+        }
+        if (photo.getDerivativeStatus() == DerivativeStatus.PENDING) {
+            return this.derivativePending();
+        }
 
-        return new ResponseEntity<>(photoDTO.getImage(), headers, HttpStatus.OK);
+        return this.streamThumbnail(photo, IMMUTABLE_CACHE_CONTROL, requestHeaders);
+
+    }
+
+    /**
+     * GET  /photos/thumbnails : get the thumbnails of several photos in a single response.
+     * <p>
+     * The thumbnails are the parts of a "multipart/mixed" body, in the order of the ids, each with the URL of
+     * the thumbnail in its "Content-Location" header. The photos not found, or whose thumbnail is not generated yet,
+     * have no part, their thumbnail is fetched separately.
+     *
+     * @param ids the ids of the photos, at most 100
+     * @return the ResponseEntity with status 200 (OK) and with body the thumbnails,
+     * or with status 204 (No Content) if none of the photos has a thumbnail,
+     * or with status 400 (Bad Request) if there are more than 100 ids
+     * @throws IOException if a thumbnail file can't be read
+     */
+    @GetMapping("/photos/thumbnails")
+    @Timed
+    public ResponseEntity<StreamingResponseBody> getPhotoThumbnails(@RequestParam("ids") List<Long> ids) throws IOException {
+        log.debug("REST request to get the thumbnails of Photos : {}", ids);
+
+        if (ids.size() > MAX_THUMBNAILS) {
+            throw new BadRequestAlertException("At most " + MAX_THUMBNAILS + " thumbnails can be fetched at once", ENTITY_NAME, "toomanyids");
+        }
+        Map<Long, Photo> photosById = photoRepository.findAll(ids).stream()
+            .collect(Collectors.toMap(Photo::getId, Function.identity()));
+        List<Photo> photos = ids.stream().distinct().map(photosById::get).filter(Objects::nonNull).collect(Collectors.toList());
+
+        return this.streamThumbnails(photos, new HttpHeaders());
+    }
+
+    /**
+     * GET  /photos/tag/:id/thumbnails : get the thumbnails of a page of the photos of the "id" tag in a single response.
+     * <p>
+     * The page is the one of the listing of the photos of the tag, and the thumbnails are sent as by "GET /photos/thumbnails".
+     *
+     * @param id the id of the tag, 0 for the root tag
+     * @param pageable the pagination information
+     * @return the ResponseEntity with status 200 (OK) and with body the thumbnails,
+     * or with status 204 (No Content) if none of the photos of the page has a thumbnail,
+     * or with status 404 (Not Found) if the tag doesn't exist
+     * @throws IOException if a thumbnail file can't be read
+     */
+    @GetMapping("/photos/tag/{id}/thumbnails")
+    @Timed
+    public ResponseEntity<StreamingResponseBody> getPhotoThumbnailsByTag(@PathVariable Long id, Pageable pageable) throws IOException {
+        log.debug("REST request to get a page of the thumbnails of the Photos of Tag : {}", id);
+
+        TagTree tree = tagTreeService.getTree();
+        Tag tag = id == 0 ? tree.getRoot() : tree.getTag(id);
+        if (tag == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Page<Photo> page = photoRepository.findAllByTagWithEagerRelationships(tag, pageable, () -> pageCountService.countPhotosByTag(tag));
+        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/photos/tag/" + id + "/thumbnails");
+
+        return this.streamThumbnails(page.getContent(), headers);
+    }
+
+    /**
+     * GET  /photos/:id/derivatives/:size : stream the derivative of the "id" photo at the width "size".
+     * <p>
+     * A derivative is never larger than the original photo.
+     *
+     * @param id the id of the photo to retrieve the derivative
+     * @param size the width of the derivative, one of the configured derivative sizes
+     * @param requestHeaders the request headers, conditional headers revalidate a cached derivative
+     * @return the ResponseEntity with status 200 (OK) and with body the derivative bytes,
+     * or with status 202 (Accepted) if the derivative is not generated yet,
+     * or with status 304 (Not Modified) if the cached derivative is still valid,
+     * or with status 404 (Not Found) if the photo or the derivative of this size doesn't exist
+     * @throws IOException if the derivative file can't be read
+     */
+    @GetMapping("/photos/{id}/derivatives/{size}")
+    @Timed
+    public ResponseEntity<StreamingResponseBody> getPhotoDerivative(@PathVariable Long id, @PathVariable int size,
+                                                                    @RequestHeader HttpHeaders requestHeaders) throws IOException {
+        log.debug("REST request to get Photo derivative : {}, size : {}", id, size);
+
+        Photo photo = photoRepository.findOne(id);
+        if (photo == null || !photoDerivativeService.getSizes().contains(size)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (photo.getDerivativeStatus() == DerivativeStatus.PENDING) {
+            return this.derivativePending();
+        }
+
+        return this.streamImage(photo, photoDerivativeService.getDerivativePath(photo, size), "-" + size,
+            REVALIDATE_CACHE_CONTROL, requestHeaders);
 
     }
 
@@ -273,55 +556,61 @@ public class PhotoResource {
     public ResponseEntity<Void> deletePhoto(@PathVariable Long id) {
         log.debug("REST request to delete Photo : {}", id);
         Photo photo = this.photoRepository.findOne(id);
-        deleteThumbnail(photo);
-        deleteImage(photo);
         photoRepository.delete(id);
+        photoService.deleteFiles(photo);
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
-    private void setTagsToPhoto(Photo photo) {
+    private List<PhotoDTO> toPhotoDTOs(List<Photo> photos, boolean inline) {
 
-        Set<Tag> tags = photo.getTags();
-        Set<Tag> parentsTag = new HashSet<>();
+        List<PhotoDTO> photoDTOs = new ArrayList<>();
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
 
-        for (Tag tag: tags) {
-            parentsTag.addAll(this.findParentsOfTag(tag));
+        for (Photo photo: photos) {
+            PhotoDTO photoDTO = new PhotoDTO(photo);
+            photoDTO.setThumbnailUrl(this.getThumbnailUrl(photo));
+            if (inline) {
+                loads.add(CompletableFuture.runAsync(() -> this.loadImage(photo, photoDTO, true), thumbnailTaskExecutor));
+            }
+            photoDTOs.add(photoDTO);
         }
 
-        tags.addAll(parentsTag);
-        photo.setTags(tags);
-
-    }
+        // The thumbnails are read in parallel, and all read before the page is serialized
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).join();
 
-    private Set<Tag> findParentsOfTag(Tag tag) {
+        return photoDTOs;
 
-        Set<Tag> results = new HashSet<>();
+    }
 
-        if (tag.getParentTag() == null) {
-            return new HashSet<>();
+    /**
+     * The thumbnail URL includes the content hash when known, so that clients can cache it for good.
+     */
+    private String getThumbnailUrl(Photo photo) {
+        if (photo.getContentHash() != null) {
+            return "/api/photos/" + photo.getId() + "/thumbnail/" + photo.getContentHash();
         }
-
-        Tag parentTag = tagRepository.findParentOfTag(tag);
-        results.add(parentTag);
-        results.addAll(this.findParentsOfTag(parentTag));
-
-        return results;
-
+        return "/api/photos/" + photo.getId() + "/thumbnail";
     }
 
-    private void loadImage(PhotoDTO photo, boolean isThumbnail) {
-
-        String fileName;
-        if (isThumbnail) {
-            fileName = photo.getFileName() + "-thumbnail." + photo.getType();
-        } else {
-            fileName = photo.getFileName() + "." + photo.getType();
+    private String getListingUrl(String baseUrl, boolean inline) {
+        if (inline) {
+            return baseUrl + "?inline=true";
         }
+        return baseUrl;
+    }
+
+    private void loadImage(Photo source, PhotoDTO photo, boolean isThumbnail) {
 
         try {
 
-            FileInputStream fileInputStream = new FileInputStream(PhotoResource.PHOTO_BASE_PATH + File.separator + fileName);
-            byte[] media = IOUtils.toByteArray(fileInputStream);
+            byte[] media;
+            if (isThumbnail) {
+                ByteBuffer thumbnail = thumbnailCache.get(photoDerivativeService.getThumbnailPath(source)).getBytes();
+                media = new byte[thumbnail.remaining()];
+                thumbnail.get(media);
+            } else {
+                media = Files.readAllBytes(photoStorage.getOriginal(source));
+            }
             String image = "data:image/" + photo.getType().toLowerCase() + ";base64," + Base64.getEncoder().encodeToString(media);
 
             if (isThumbnail) {
@@ -337,6 +626,92 @@ public class PhotoResource {
 
     }
 
+    private ResponseEntity<StreamingResponseBody> streamImage(Photo photo, Path file, String eTagSuffix, String cacheControl,
+                                                              HttpHeaders requestHeaders) throws IOException {
+
+        if (!Files.isReadable(file)) {
+            log.info("No image to stream found for photo with id: " + photo.getId());
+            return ResponseEntity.notFound().build();
+        }
+
+        return FileResponseUtil.streamFile(file, this.getETag(photo, eTagSuffix), cacheControl, requestHeaders);
+    }
+
+    /**
+     * The thumbnails are served from the thumbnail cache, read from their file on the first request only.
+     */
+    private ResponseEntity<StreamingResponseBody> streamThumbnail(Photo photo, String cacheControl,
+                                                                  HttpHeaders requestHeaders) throws IOException {
+
+        Path file = photoDerivativeService.getThumbnailPath(photo);
+        ThumbnailCache.Thumbnail thumbnail;
+        try {
+            thumbnail = thumbnailCache.get(file);
+        } catch (NoSuchFileException e) {
+            log.info("No image to stream found for photo with id: " + photo.getId());
+            return ResponseEntity.notFound().build();
+        }
+
+        return FileResponseUtil.streamBytes(thumbnail.getBytes(), FileResponseUtil.getMediaType(file), thumbnail.getLastModified(),
+            this.getETag(photo, "-thumbnail"), cacheControl, requestHeaders);
+    }
+
+    /**
+     * The thumbnails are read from the thumbnail cache before the response is sent, so a missing one is left out.
+     */
+    private ResponseEntity<StreamingResponseBody> streamThumbnails(List<Photo> photos, HttpHeaders headers) throws IOException {
+
+        List<FileResponseUtil.Part> parts = new ArrayList<>();
+        for (Photo photo : photos) {
+            if (photo.getDerivativeStatus() == DerivativeStatus.PENDING) {
+                continue;
+            }
+            Path file = photoDerivativeService.getThumbnailPath(photo);
+            ThumbnailCache.Thumbnail thumbnail;
+            try {
+                thumbnail = thumbnailCache.get(file);
+            } catch (NoSuchFileException e) {
+                log.info("No image to stream found for photo with id: " + photo.getId());
+                continue;
+            }
+            HttpHeaders partHeaders = new HttpHeaders();
+            partHeaders.setContentType(FileResponseUtil.getMediaType(file));
+            partHeaders.set(HttpHeaders.CONTENT_LOCATION, this.getThumbnailUrl(photo));
+            String eTag = this.getETag(photo, "-thumbnail");
+            if (eTag != null) {
+                partHeaders.setETag(eTag);
+            }
+            parts.add(new FileResponseUtil.Part(partHeaders, thumbnail.getBytes()));
+        }
+
+        if (parts.isEmpty()) {
+            return new ResponseEntity<>(headers, HttpStatus.NO_CONTENT);
+        }
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamParts(parts, REVALIDATE_CACHE_CONTROL);
+        headers.putAll(response.getHeaders());
+        return new ResponseEntity<>(response.getBody(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * The entity tag of an image is strong when the content hash of the photo is known.
+     */
+    private String getETag(Photo photo, String suffix) {
+        if (photo.getContentHash() == null) {
+            return null;
+        }
+        return "\"" + photo.getContentHash() + suffix + "\"";
+    }
+
+    /**
+     * The derivatives of the photo are not generated yet, the client retries later.
+     */
+    private ResponseEntity<StreamingResponseBody> derivativePending() {
+        return ResponseEntity.accepted()
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(applicationProperties.getDerivatives().getRetryAfterSeconds()))
+            .cacheControl(CacheControl.noStore())
+            .build();
+    }
+
     private Photo storeImage(MultipartFile image) throws Exception {
         Photo photo = new Photo();
         return this.storeImage(image, photo);
@@ -353,21 +728,11 @@ public class PhotoResource {
                 photo.setFileName(nameSplit[0]);
                 photo.setType(nameSplit[1]);
 
-                byte[] bytes = image.getBytes();
-                File file = new File(PhotoResource.PHOTO_BASE_PATH + File.separator + image.getOriginalFilename());
-                BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
-                stream.write(bytes);
-                stream.close();
+                photoStorage.store(photo, image.getInputStream());
+                photo.setDerivativeStatus(DerivativeStatus.PENDING);
 
                 log.info("Image stored for photo");
 
-                Image imgThumb = ImageIO.read(file).getScaledInstance(400, -1, Image.SCALE_SMOOTH);
-                BufferedImage imgBI = new BufferedImage(imgThumb.getWidth(null), imgThumb.getHeight(null), BufferedImage.TYPE_INT_RGB);
-                imgBI.createGraphics().drawImage(imgThumb,0,0,null);
-                ImageIO.write(imgBI, photo.getType(), new File(PhotoResource.PHOTO_BASE_PATH + File.separator + photo.getFileName() + "-thumbnail." + photo.getType()));
-
-                log.info("Thumbnail stored for photo");
-
             } catch (IOException e) {
                 log.warn("Error in store image file for photo");
                 e.printStackTrace();
@@ -384,30 +749,4 @@ public class PhotoResource {
 
     }
 
-    private void deleteImage(Photo photo) {
-
-        String fileName = photo.getFileName() + "." + photo.getType();
-        File file = new File(PhotoResource.PHOTO_BASE_PATH + File.separator + fileName);
-
-        if(file.delete()){
-            log.info("Image of photo " + photo + " with name " + fileName + " is deleted.");
-        }else{
-            log.info("No image found to delete for photo " + photo);
-        }
-
-    }
-
-    private void deleteThumbnail(Photo photo) {
-
-        String fileName = photo.getFileName() + "-thumbnail." + photo.getType();
-        File file = new File(PhotoResource.PHOTO_BASE_PATH + File.separator + fileName);
-
-        if(file.delete()){
-            log.info("Thumbnail of photo " + photo + " with name " + fileName + " is deleted.");
-        }else{
-            log.info("No Thumbnail found to delete for photo " + photo);
-        }
-
-    }
-
 }
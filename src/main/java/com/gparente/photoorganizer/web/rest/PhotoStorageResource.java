@@ -0,0 +1,43 @@
+package com.gparente.photoorganizer.web.rest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.gparente.photoorganizer.security.AuthoritiesConstants;
+import com.gparente.photoorganizer.service.PhotoStorageMigrationService;
+import com.gparente.photoorganizer.service.dto.StorageMigrationDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * REST controller for managing the storage of the photo files.
+ */
+@RestController
+@RequestMapping("/api")
+public class PhotoStorageResource {
+
+    private final Logger log = LoggerFactory.getLogger(PhotoStorageResource.class);
+
+    private final PhotoStorageMigrationService photoStorageMigrationService;
+
+    public PhotoStorageResource(PhotoStorageMigrationService photoStorageMigrationService) {
+        this.photoStorageMigrationService = photoStorageMigrationService;
+    }
+
+    /**
+     * POST  /photos/storage/migration : migrate the legacy photos to the content addressed photo storage.
+     * <p>
+     * The legacy files are left in place, the legacy directory can be removed once all the photos are migrated.
+     *
+     * @return the ResponseEntity with status 200 (OK) and with body the counts of the migrated photos
+     */
+    @PostMapping("/photos/storage/migration")
+    @Timed
+    @Secured(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<StorageMigrationDTO> migrateLegacyPhotos() {
+        log.debug("REST request to migrate the legacy photos to the photo storage");
+        return ResponseEntity.ok(photoStorageMigrationService.migrateLegacyPhotos());
+    }
+}
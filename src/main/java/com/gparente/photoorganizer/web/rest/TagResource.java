@@ -1,11 +1,13 @@
 package com.gparente.photoorganizer.web.rest;
 
 import com.codahale.metrics.annotation.Timed;
-import com.gparente.photoorganizer.domain.Photo;
 import com.gparente.photoorganizer.domain.Tag;
 
-import com.gparente.photoorganizer.repository.PhotoRepository;
 import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.service.PageCountService;
+import com.gparente.photoorganizer.service.TagService;
+import com.gparente.photoorganizer.service.TagTreeService;
+import com.gparente.photoorganizer.service.util.TagTree;
 import com.gparente.photoorganizer.web.rest.errors.BadRequestAlertException;
 import com.gparente.photoorganizer.web.rest.util.HeaderUtil;
 import com.gparente.photoorganizer.web.rest.util.PaginationUtil;
@@ -17,7 +19,6 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
@@ -37,13 +38,16 @@ public class TagResource {
     private static final String ENTITY_NAME = "tag";
 
     private final TagRepository tagRepository;
-    private final PhotoRepository photoRepository;
-    private final PhotoResource photoResource;
+    private final TagService tagService;
+    private final PageCountService pageCountService;
+    private final TagTreeService tagTreeService;
 
-    public TagResource(TagRepository tagRepository, PhotoRepository photoRepository, PhotoResource photoResource) {
+    public TagResource(TagRepository tagRepository, TagService tagService,
+                       PageCountService pageCountService, TagTreeService tagTreeService) {
         this.tagRepository = tagRepository;
-        this.photoRepository = photoRepository;
-        this.photoResource = photoResource;
+        this.tagService = tagService;
+        this.pageCountService = pageCountService;
+        this.tagTreeService = tagTreeService;
     }
 
     /**
@@ -71,7 +75,7 @@ public class TagResource {
      *
      * @param tag the tag to update
      * @return the ResponseEntity with status 200 (OK) and with body the updated tag,
-     * or with status 400 (Bad Request) if the tag is not valid,
+     * or with status 400 (Bad Request) if the tag is not valid, as when it is moved under one of its descendants,
      * or with status 500 (Internal Server Error) if the tag couldn't be updated
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
@@ -82,6 +86,10 @@ public class TagResource {
         if (tag.getId() == null) {
             return createTag(tag);
         }
+        if (tag.getParentTag() != null && tagRepository.findSubtree(tag.getId()).stream()
+            .anyMatch(descendant -> descendant.getId().equals(tag.getParentTag().getId()))) {
+            throw new BadRequestAlertException("A tag cannot be moved under itself", ENTITY_NAME, "parentcycle");
+        }
         Tag result = tagRepository.save(tag);
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, tag.getId().toString()))
@@ -98,7 +106,7 @@ public class TagResource {
     @Timed
     public ResponseEntity<List<Tag>> getAllTags(Pageable pageable) {
         log.debug("REST request to get a page of Tags");
-        Page<Tag> page = tagRepository.findAllWithEagerRelationships(pageable);
+        Page<Tag> page = tagRepository.findAllWithEagerRelationships(pageable, pageCountService::countTags);
         HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/tags");
         return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
     }
@@ -127,85 +135,38 @@ public class TagResource {
     @Timed
     public ResponseEntity<Set<Tag>> getSonsOfTag(@PathVariable Long id) {
         log.debug("REST request to get Tag : {}", id);
-        Tag tag = findTagById(id);
-        Set<Tag> sonsTags = tagRepository.findSonsOfTag(tag);
+        TagTree tree = tagTreeService.getTree();
+        Tag tag = id == 0 ? tree.getRoot() : tree.getTag(id);
+        Set<Tag> sonsTags = tag == null ? null : new LinkedHashSet<>(tree.getChildren(tag.getId()));
         return ResponseUtil.wrapOrNotFound(Optional.ofNullable(sonsTags));
     }
 
     /**
      * DELETE  /tags/:id : delete the "id" tag.
      *
-     * @param id the id of the tag to delete
-     * @return the ResponseEntity with status 200 (OK)
+     * @param id the id of the tag to delete, 0 for the root tag
+     * @return the ResponseEntity with status 200 (OK), or with status 404 (Not Found)
      */
     @DeleteMapping("/tags/{id}")
     @Timed
-    @Transactional
     public ResponseEntity<Void> deleteTag(@PathVariable Long id) {
         log.debug("REST request to delete Tag : {}", id);
-        Tag tag = findTagByIdWithEagerRelationships(id);
-
-        Set<Tag> tagsDeleted = this.deleteRecursively(tag);
-        log.info("Tags deleted: " + tagsDeleted.toString());
-
-        return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
-    }
-
-    private Set<Tag> deleteRecursively(Tag tag) {
-
-        Set<Tag> sonsTags = tagRepository.findSonsOfTag(tag);
-
-        if (sonsTags.isEmpty()) {
-
-            this.deleteSingleTagAndPhotos(tag);
-
-            Set<Tag> tags = new HashSet<>();
-            tags.add(tag);
-
-            return tags;
-        }
-
-        Set<Tag> tagsDeleted = new HashSet<>();
-        for(Tag tagSon: sonsTags) {
-            tagsDeleted.addAll(deleteRecursively(tagSon));
-        }
-
-        this.deleteSingleTagAndPhotos(tag);
-
-        tagsDeleted.add(tag);
-
-        return tagsDeleted;
-
-    }
-
-    private void deleteSingleTagAndPhotos(Tag tag) {
-
-        Set<Photo> photos = this.photoRepository.findAllByTagWithEagerRelationships(tag);
-
-        for (Photo photo: photos) {
-            photo.getTags().remove(tag);
-            if (photo.getTags().size() == 0) {
-                this.photoResource.deletePhoto(photo.getId());
-            }
+        Tag tag = findTagById(id);
+        if (tag == null) {
+            return ResponseEntity.notFound().build();
         }
 
-        tagRepository.delete(tag.getId());
+        tagService.deleteSubtree(tag.getId());
 
+        return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_NAME, id.toString())).build();
     }
 
     private Tag findTagById(Long id) {
+        TagTree tree = tagTreeService.getTree();
         if (id == 0) {
-            return tagRepository.findRootTag();
-        } else {
-            return tagRepository.findOne(id);
-        }
-    }
-
-    private Tag findTagByIdWithEagerRelationships(Long id) {
-        if (id == 0) {
-            return tagRepository.findRootTagWithEagerRelationships();
+            return tree.getRoot();
         } else {
-            return tagRepository.findOneWithEagerRelationships(id);
+            return tree.getTag(id);
         }
     }
 
@@ -0,0 +1,411 @@
+package com.gparente.photoorganizer.web.rest.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Utility class for streaming files in HTTP responses.
+ *
+ * <p>
+ * The file bytes are passed from the file channel straight to the response with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so a download never
+ * needs more than a fixed buffer of heap, whatever the size of the file. The content of a file already in memory,
+ * like a cached thumbnail, is served the same way from its buffer. Several contents in memory, like the thumbnails
+ * of a page, are sent together as the parts of a "multipart/mixed" body.
+ *
+ * <p>
+ * Byte ranges follow <a href="https://tools.ietf.org/html/rfc7233">RFC 7233</a>: a single range is sent
+ * with status 206 (Partial Content), several ranges are sent as a "multipart/byteranges" body, and each
+ * range is served by seeking the file.
+ */
+public final class FileResponseUtil {
+
+    /**
+     * Requests asking for more ranges than this are answered with the whole file,
+     * to avoid serving a huge number of tiny parts.
+     */
+    private static final int MAX_RANGES = 16;
+
+    private static final String CRLF = "\r\n";
+
+    private FileResponseUtil() {
+    }
+
+    /**
+     * Build the response streaming the given file, or the byte ranges of it asked by the request.
+     *
+     * <p>
+     * Conditional requests are answered from the entity tag and the file attributes only,
+     * so a revalidation never reads the file contents.
+     *
+     * @param file the file to stream
+     * @param eTag the strong entity tag of the file, or null to use a weak one built from the file size and modification time
+     * @param cacheControl the "Cache-Control" header value of the response
+     * @param requestHeaders the headers of the request, used to read the conditional and range headers
+     * @return the ResponseEntity with status 200 (OK) and the whole file,
+     * or with status 206 (Partial Content) and the requested ranges,
+     * or with status 304 (Not Modified) if the client copy of the file is still valid,
+     * or with status 416 (Requested Range Not Satisfiable) if no requested range is inside the file
+     * @throws IOException if the file attributes can't be read
+     */
+    public static ResponseEntity<StreamingResponseBody> streamFile(Path file, String eTag, String cacheControl,
+                                                                   HttpHeaders requestHeaders) throws IOException {
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return stream(() -> new FileContent(file), attributes.size(), attributes.lastModifiedTime().toMillis(),
+            getMediaType(file), eTag, cacheControl, requestHeaders);
+    }
+
+    /**
+     * Build the response streaming the given bytes, or the byte ranges of them asked by the request, like {@link #streamFile}
+     * for the content of a file already in memory.
+     *
+     * @param bytes the bytes to stream, from their position to their limit, which are not changed
+     * @param contentType the media type of the bytes
+     * @param lastModified the modification time of the bytes, in milliseconds
+     * @param eTag the strong entity tag of the bytes, or null to use a weak one built from their size and modification time
+     * @param cacheControl the "Cache-Control" header value of the response
+     * @param requestHeaders the headers of the request, used to read the conditional and range headers
+     * @return the ResponseEntity with status 200 (OK) and all the bytes,
+     * or with status 206 (Partial Content) and the requested ranges,
+     * or with status 304 (Not Modified) if the client copy of the bytes is still valid,
+     * or with status 416 (Requested Range Not Satisfiable) if no requested range is inside the bytes
+     */
+    public static ResponseEntity<StreamingResponseBody> streamBytes(ByteBuffer bytes, MediaType contentType, long lastModified,
+                                                                    String eTag, String cacheControl, HttpHeaders requestHeaders) {
+        ByteBuffer content = bytes.duplicate();
+        return stream(() -> (segment, target) -> transferSegment(content, segment, target), content.remaining(), lastModified,
+            contentType, eTag, cacheControl, requestHeaders);
+    }
+
+    /**
+     * Build the response streaming several contents already in memory, like the thumbnails of a page,
+     * as the parts of a single "multipart/mixed" body.
+     *
+     * @param parts the parts, in the order of the body
+     * @param cacheControl the "Cache-Control" header value of the response
+     * @return the ResponseEntity with status 200 (OK) and the parts
+     */
+    public static ResponseEntity<StreamingResponseBody> streamParts(List<Part> parts, String cacheControl) {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>();
+        long contentLength = 0;
+        for (Part part : parts) {
+            StringBuilder partHeader = new StringBuilder(CRLF + "--" + boundary + CRLF);
+            part.headers.forEach((name, values) -> values.forEach(value -> partHeader.append(name).append(": ").append(value).append(CRLF)));
+            partHeader.append(HttpHeaders.CONTENT_LENGTH).append(": ").append(part.bytes.remaining()).append(CRLF).append(CRLF);
+            byte[] header = partHeader.toString().getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + part.bytes.remaining();
+        }
+        byte[] closeDelimiter = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closeDelimiter.length;
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("multipart/mixed; boundary=" + boundary));
+        headers.setContentLength(contentLength);
+        headers.setCacheControl(cacheControl);
+        return new ResponseEntity<>(out -> {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (int i = 0; i < parts.size(); i++) {
+                out.write(partHeaders.get(i));
+                ByteBuffer bytes = parts.get(i).bytes;
+                transferSegment(bytes, new long[]{0, bytes.remaining()}, target);
+            }
+            out.write(closeDelimiter);
+        }, headers, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> stream(ContentSource content, long length, long lastModified,
+                                                                MediaType contentType, String eTag, String cacheControl,
+                                                                HttpHeaders requestHeaders) {
+
+        String entityTag = eTag != null ? eTag : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setETag(entityTag);
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(cacheControl);
+
+        if (isNotModified(requestHeaders, entityTag, lastModified)) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        List<HttpRange> ranges = parseRanges(requestHeaders);
+        if (ranges.isEmpty() || ranges.size() > MAX_RANGES || !isRangeValidatorMatching(requestHeaders, entityTag, lastModified)) {
+            headers.setContentType(contentType);
+            headers.setContentLength(length);
+            return new ResponseEntity<>(out -> transfer(content, Collections.singletonList(new long[]{0, length}), out), headers, HttpStatus.OK);
+        }
+
+        List<long[]> segments = toSegments(ranges, length);
+        if (segments.isEmpty()) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+
+        if (segments.size() == 1) {
+            long[] segment = segments.get(0);
+            headers.setContentType(contentType);
+            headers.setContentLength(segment[1]);
+            headers.set(HttpHeaders.CONTENT_RANGE, contentRange(segment, length));
+            return new ResponseEntity<>(out -> transfer(content, segments, out), headers, HttpStatus.PARTIAL_CONTENT);
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>();
+        long contentLength = 0;
+        for (long[] segment : segments) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF +
+                HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF +
+                HttpHeaders.CONTENT_RANGE + ": " + contentRange(segment, length) + CRLF + CRLF)
+                .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + segment[1];
+        }
+        byte[] closeDelimiter = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closeDelimiter.length;
+
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        headers.setContentLength(contentLength);
+        return new ResponseEntity<>(out -> transferParts(content, segments, partHeaders, closeDelimiter, out), headers, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    /**
+     * Resolve the media type of a file from its extension.
+     *
+     * @param file the file
+     * @return the media type, or "application/octet-stream" if unknown
+     */
+    public static MediaType getMediaType(Path file) {
+        String contentType = URLConnection.guessContentTypeFromName(file.getFileName().toString().toLowerCase());
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        return MediaType.parseMediaType(contentType);
+    }
+
+    private static List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            // An invalid "Range" header is ignored and the whole file is sent, as per RFC 7233
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Evaluate the "If-None-Match" and "If-Modified-Since" headers as per RFC 7232,
+     * "If-None-Match" taking precedence when both are present.
+     */
+    private static boolean isNotModified(HttpHeaders requestHeaders, String entityTag, long lastModified) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            for (String clientTag : ifNoneMatch) {
+                if ("*".equals(clientTag.trim()) || weakETag(clientTag).equals(weakETag(entityTag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a precision of one second
+        return ifModifiedSince != -1 && lastModified / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    /**
+     * The "If-Range" header makes the ranges valid only if the file didn't change since the client got its first part.
+     * An entity tag validator only matches with a strong comparison, as per RFC 7233.
+     */
+    private static boolean isRangeValidatorMatching(HttpHeaders requestHeaders, String entityTag, long lastModified) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return !ifRange.startsWith("W/") && !entityTag.startsWith("W/") && ifRange.equals(entityTag);
+        }
+        long ifRangeDate;
+        try {
+            ifRangeDate = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifRangeDate == lastModified / 1000 * 1000;
+    }
+
+    private static String weakETag(String entityTag) {
+        String tag = entityTag.trim();
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Convert the requested ranges to sorted {offset, count} segments of the file,
+     * dropping the unsatisfiable ones and merging the overlapping ones.
+     */
+    private static List<long[]> toSegments(List<HttpRange> ranges, long length) {
+        List<long[]> satisfiable = new ArrayList<>();
+        for (HttpRange range : ranges) {
+            if (length == 0) {
+                break;
+            }
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start < length && start <= end) {
+                satisfiable.add(new long[]{start, end});
+            }
+        }
+        satisfiable.sort(Comparator.comparingLong(range -> range[0]));
+
+        List<long[]> segments = new ArrayList<>();
+        long[] current = null;
+        for (long[] range : satisfiable) {
+            if (current != null && range[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], range[1]);
+            } else {
+                current = range;
+                segments.add(current);
+            }
+        }
+        for (long[] segment : segments) {
+            segment[1] = segment[1] - segment[0] + 1;
+        }
+        return segments;
+    }
+
+    private static String contentRange(long[] segment, long length) {
+        return "bytes " + segment[0] + "-" + (segment[0] + segment[1] - 1) + "/" + length;
+    }
+
+    private static void transfer(ContentSource source, List<long[]> segments, OutputStream out) throws IOException {
+        try (Content content = source.open()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (long[] segment : segments) {
+                content.transfer(segment, target);
+            }
+        }
+    }
+
+    private static void transferParts(ContentSource source, List<long[]> segments, List<byte[]> partHeaders, byte[] closeDelimiter,
+                                      OutputStream out) throws IOException {
+        try (Content content = source.open()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (int i = 0; i < segments.size(); i++) {
+                out.write(partHeaders.get(i));
+                content.transfer(segments.get(i), target);
+            }
+            out.write(closeDelimiter);
+        }
+    }
+
+    private static void transferSegment(FileChannel channel, long[] segment, WritableByteChannel target) throws IOException {
+        long position = segment[0];
+        long count = segment[1];
+        long transferred = 0;
+        while (transferred < count) {
+            long written = channel.transferTo(position + transferred, count - transferred, target);
+            if (written <= 0) {
+                break;
+            }
+            transferred += written;
+        }
+    }
+
+    private static void transferSegment(ByteBuffer bytes, long[] segment, WritableByteChannel target) throws IOException {
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(slice.position() + (int) segment[0]);
+        slice.limit(slice.position() + (int) segment[1]);
+        while (slice.hasRemaining()) {
+            target.write(slice);
+        }
+    }
+
+    /**
+     * A part of a "multipart/mixed" body: its headers, its length excepted, and its bytes.
+     */
+    public static final class Part {
+
+        private final HttpHeaders headers;
+
+        private final ByteBuffer bytes;
+
+        /**
+         * @param headers the headers of the part, the "Content-Length" is added
+         * @param bytes the bytes of the part, from their position to their limit, which are not changed
+         */
+        public Part(HttpHeaders headers, ByteBuffer bytes) {
+            this.headers = headers;
+            this.bytes = bytes.duplicate();
+        }
+    }
+
+    /**
+     * Opens the content of a response when its body is written.
+     */
+    @FunctionalInterface
+    private interface ContentSource {
+
+        Content open() throws IOException;
+    }
+
+    /**
+     * The content of a response, from which the {offset, count} segments are written.
+     */
+    @FunctionalInterface
+    private interface Content extends Closeable {
+
+        void transfer(long[] segment, WritableByteChannel target) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private static final class FileContent implements Content {
+
+        private final FileChannel channel;
+
+        private FileContent(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        @Override
+        public void transfer(long[] segment, WritableByteChannel target) throws IOException {
+            transferSegment(channel, segment, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
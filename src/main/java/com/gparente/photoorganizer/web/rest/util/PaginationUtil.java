@@ -39,6 +39,20 @@ public final class PaginationUtil {
         return headers;
     }
 
+    /**
+     * Headers of a page read from a cursor: no total count, only the link to the next page when there is one.
+     */
+    public static HttpHeaders generateCursorHttpHeaders(String nextCursor, String baseUrl, int size) {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (nextCursor != null) {
+            headers.add("X-Next-Cursor", nextCursor);
+            String uri = UriComponentsBuilder.fromUriString(baseUrl).queryParam("cursor", nextCursor).queryParam("size", size).toUriString();
+            headers.add(HttpHeaders.LINK, "<" + uri + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+
     private static String generateUri(String baseUrl, int page, int size) {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
@@ -7,7 +7,8 @@ export class Photo implements BaseEntity {
         public path?: string,
         public type?: string,
         public dateCreated?: any,
-        public thumbnail?: string,
+        public thumbnailUrl?: string,
+        public thumbnail?: any,
         public image?: any,
         public preview?: any,
         public tags?: BaseEntity[],
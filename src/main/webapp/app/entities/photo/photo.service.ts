@@ -1,5 +1,5 @@
 import { Injectable } from '@angular/core';
-import { HttpClient, HttpResponse } from '@angular/common/http';
+import { HttpClient, HttpParams, HttpResponse } from '@angular/common/http';
 import { Observable } from 'rxjs/Observable';
 import { SERVER_API_URL } from '../../app.constants';
 
@@ -27,6 +27,14 @@ export class PhotoService {
 
     }
 
+    /**
+     * Upload several photos at once, the form data has an "images" part per file.
+     * The body of the response has the result of each file, in the order of the files.
+     */
+    saveAll(formData: FormData): Observable<any> {
+        return this.http.post(this.resourceUrl + '/create/batch', formData);
+    }
+
     create(photo: Photo): Observable<EntityResponseType> {
         const copy = this.convert(photo);
         return this.http.post<Photo>(this.resourceUrl, copy, { observe: 'response' })
@@ -56,8 +64,45 @@ export class PhotoService {
             .map((res: HttpResponse<Photo[]>) => this.convertArrayResponse(res));
     }
 
-    getPhotoImage(photoId: number): Observable<string> {
-        return this.http.get(`${this.resourceUrl}/${photoId}/image`, { responseType: 'text' });
+    /**
+     * Get a page of the photos of a tag and of all its descendants, each photo once.
+     */
+    queryBySubtree(tagId?: number, req?: any): Observable<HttpResponse<Photo[]>> {
+        const options = createRequestOption(req);
+        return this.http.get<Photo[]>(`${this.resourceUrl}/tag/${tagId}/subtree`, { params: options, observe: 'response' })
+            .map((res: HttpResponse<Photo[]>) => this.convertArrayResponse(res));
+    }
+
+    /**
+     * Get a page of the photo timeline, the newest first. The cursor of the next page
+     * is in the "X-Next-Cursor" header of the response, missing on the last page.
+     */
+    queryTimeline(cursor?: string, size = 20): Observable<HttpResponse<Photo[]>> {
+        let params = new HttpParams().set('size', String(size));
+        if (cursor) {
+            params = params.set('cursor', cursor);
+        }
+        return this.http.get<Photo[]>(`${this.resourceUrl}/timeline`, { params, observe: 'response' })
+            .map((res: HttpResponse<Photo[]>) => this.convertArrayResponse(res));
+    }
+
+    getPhotoImage(photoId: number): Observable<Blob> {
+        return this.http.get(`${this.resourceUrl}/${photoId}/image`, { responseType: 'blob' });
+    }
+
+    getPhotoThumbnail(photo: Photo): Observable<HttpResponse<Blob>> {
+        // The thumbnail URL is versioned by the photo content, so the browser cache can keep it for good
+        return this.http.get(SERVER_API_URL + photo.thumbnailUrl.replace(/^\//, ''), { responseType: 'blob', observe: 'response' });
+    }
+
+    /**
+     * Get the thumbnails of several photos, at most 100, in a single "multipart/mixed" response.
+     * The thumbnails are keyed by their URL; the ones still being generated are missing.
+     */
+    getPhotoThumbnails(photos: Photo[]): Observable<{ [thumbnailUrl: string]: Blob }> {
+        const params = new HttpParams().set('ids', photos.map((photo) => photo.id).join(','));
+        return this.http.get(`${this.resourceUrl}/thumbnails`, { params, responseType: 'arraybuffer', observe: 'response' })
+            .map((res: HttpResponse<ArrayBuffer>) => this.convertThumbnailsResponse(res));
     }
 
     delete(id: number): Observable<HttpResponse<any>> {
@@ -78,6 +123,43 @@ export class PhotoService {
         return res.clone({body});
     }
 
+    /**
+     * Split a "multipart/mixed" response in its parts: each one has a delimiter line, its headers,
+     * with its "Content-Location" and "Content-Length", an empty line, then its bytes.
+     */
+    private convertThumbnailsResponse(res: HttpResponse<ArrayBuffer>): { [thumbnailUrl: string]: Blob } {
+        const thumbnails: { [thumbnailUrl: string]: Blob } = {};
+        if (res.status === 204 || !res.body) {
+            return thumbnails;
+        }
+        const body = new Uint8Array(res.body);
+        let offset = 0;
+        let headersEnd = this.indexOfEmptyLine(body, offset);
+        while (headersEnd !== -1) {
+            const headers: { [name: string]: string } = {};
+            String.fromCharCode.apply(null, body.subarray(offset, headersEnd)).split('\r\n').forEach((line: string) => {
+                const separator = line.indexOf(':');
+                if (separator > 0) {
+                    headers[line.substring(0, separator).trim().toLowerCase()] = line.substring(separator + 1).trim();
+                }
+            });
+            const start = headersEnd + 4;
+            offset = start + (+headers['content-length']);
+            thumbnails[headers['content-location']] = new Blob([body.subarray(start, offset)], { type: headers['content-type'] });
+            headersEnd = this.indexOfEmptyLine(body, offset);
+        }
+        return thumbnails;
+    }
+
+    private indexOfEmptyLine(bytes: Uint8Array, from: number): number {
+        for (let i = from; i + 3 < bytes.length; i++) {
+            if (bytes[i] === 13 && bytes[i + 1] === 10 && bytes[i + 2] === 13 && bytes[i + 3] === 10) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Convert a returned JSON object to Photo.
      */
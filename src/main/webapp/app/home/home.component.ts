@@ -1,4 +1,5 @@
-import { Component, OnInit } from '@angular/core';
+import { Component, OnDestroy, OnInit } from '@angular/core';
+import { DomSanitizer } from '@angular/platform-browser';
 import { NgbModalRef } from '@ng-bootstrap/ng-bootstrap';
 import { JhiEventManager, JhiParseLinks } from 'ng-jhipster';
 
@@ -18,7 +19,7 @@ import { ActivatedRoute, Router } from '@angular/router';
     ]
 
 })
-export class HomeComponent implements OnInit {
+export class HomeComponent implements OnInit, OnDestroy {
 
     account: Account;
     modalRef: NgbModalRef;
@@ -30,6 +31,7 @@ export class HomeComponent implements OnInit {
     history: Tag[];
     photos: Photo[];
     photosSelectedMap: { [photoId: string]: Photo };
+    thumbnailObjectUrls: string[] = [];
 
     routeData: any;
     links: any;
@@ -49,7 +51,8 @@ export class HomeComponent implements OnInit {
         private eventManager: JhiEventManager,
         private activatedRoute: ActivatedRoute,
         private parseLinks: JhiParseLinks,
-        private router: Router
+        private router: Router,
+        private sanitizer: DomSanitizer
     ) {
     }
 
@@ -73,6 +76,10 @@ export class HomeComponent implements OnInit {
         this.registerChangeInTags();
     }
 
+    ngOnDestroy() {
+        this.revokeThumbnails();
+    }
+
     registerChangeInPhotos() {
         this.eventManager.subscribe('photoListModification', (response) => this.loadPhotos(this.getTagSelected()));
     }
@@ -150,7 +157,57 @@ export class HomeComponent implements OnInit {
         this.links = this.parseLinks.parse(headers.get('link'));
         this.totalItems = headers.get('X-Total-Count');
         this.queryCount = this.totalItems;
+        this.revokeThumbnails();
         this.photos = data;
+        this.loadThumbnails(this.photos);
+    }
+
+    loadThumbnails(photos: Photo[]) {
+        // The thumbnails of the page come in a single request, the ones still being generated are then fetched one by one
+        const withThumbnail = photos.filter((photo) => photo.thumbnailUrl);
+        if (withThumbnail.length === 0) {
+            return;
+        }
+        this.photoService.getPhotoThumbnails(withThumbnail).subscribe((thumbnails) => {
+            if (this.photos !== photos) {
+                return;
+            }
+            withThumbnail.forEach((photo) => {
+                const thumbnail = thumbnails[photo.thumbnailUrl];
+                if (thumbnail) {
+                    this.showThumbnail(photo, thumbnail);
+                } else {
+                    this.loadThumbnail(photo);
+                }
+            });
+        });
+    }
+
+    loadThumbnail(photo: Photo) {
+        this.photoService.getPhotoThumbnail(photo).subscribe((res: HttpResponse<Blob>) => {
+            if (res.status === 202) {
+                // The thumbnail is still being generated
+                const retryAfter = +res.headers.get('Retry-After') || 2;
+                setTimeout(() => {
+                    if (this.photos && this.photos.indexOf(photo) !== -1) {
+                        this.loadThumbnail(photo);
+                    }
+                }, retryAfter * 1000);
+                return;
+            }
+            this.showThumbnail(photo, res.body);
+        });
+    }
+
+    showThumbnail(photo: Photo, thumbnail: Blob) {
+        const objectUrl = URL.createObjectURL(thumbnail);
+        this.thumbnailObjectUrls.push(objectUrl);
+        photo.thumbnail = this.sanitizer.bypassSecurityTrustUrl(objectUrl);
+    }
+
+    revokeThumbnails() {
+        this.thumbnailObjectUrls.forEach((objectUrl) => URL.revokeObjectURL(objectUrl));
+        this.thumbnailObjectUrls = [];
     }
 
     sort() {
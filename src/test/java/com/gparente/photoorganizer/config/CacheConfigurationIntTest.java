@@ -0,0 +1,114 @@
+package com.gparente.photoorganizer.config;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.AuthorityRepository;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+
+import com.codahale.metrics.MetricRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the second level cache regions.
+ *
+ * @see CacheConfiguration
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+public class CacheConfigurationIntTest {
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private AuthorityRepository authorityRepository;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private Statistics statistics;
+
+    private Tag tag;
+
+    @Before
+    public void init() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        tag = tagRepository.save(new Tag().name("cached"));
+    }
+
+    @After
+    public void cleanup() {
+        tagRepository.delete(tag.getId());
+    }
+
+    @Test
+    public void entitiesAreReadFromTheCache() {
+        statistics.clear();
+
+        assertThat(tagRepository.findOne(tag.getId()).getName()).isEqualTo("cached");
+
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void queryResultsAreReadFromTheCache() {
+        authorityRepository.findAll();
+        statistics.clear();
+
+        assertThat(authorityRepository.findAll()).isNotEmpty();
+
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void derivativeStatusUpdateKeepsTheOtherPhotosCached() {
+        Photo updated = photoRepository.save(new Photo().fileName("updated").type("jpg").contentHash("a")
+            .derivativeStatus(DerivativeStatus.PENDING));
+        Photo other = photoRepository.save(new Photo().fileName("other").type("jpg").contentHash("b"));
+        try {
+            photoRepository.findOne(other.getId());
+
+            assertThat(photoRepository.updateDerivativeStatus(updated.getId(), "b", DerivativeStatus.READY)).isZero();
+            assertThat(photoRepository.updateDerivativeStatus(updated.getId(), "a", DerivativeStatus.READY)).isEqualTo(1);
+            statistics.clear();
+
+            assertThat(photoRepository.findOne(other.getId()).getFileName()).isEqualTo("other");
+            assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+            assertThat(photoRepository.findOne(updated.getId()).getDerivativeStatus()).isEqualTo(DerivativeStatus.READY);
+        } finally {
+            photoRepository.delete(updated.getId());
+            photoRepository.delete(other.getId());
+        }
+    }
+
+    @Test
+    public void statisticsArePublished() {
+        assertThat(metricRegistry.getGauges()).containsKeys(
+            "jcache.statistics." + Tag.class.getName() + ".cache-hits",
+            "jcache.statistics." + Tag.class.getName() + ".cache-misses");
+    }
+}
@@ -0,0 +1,156 @@
+package com.gparente.photoorganizer.repository;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PhotoRepository.
+ *
+ * @see PhotoRepository
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+@Transactional
+public class PhotoRepositoryIntTest {
+
+    private static final int PHOTOS = 120;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager em;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void saveInBatches() {
+        Tag tag = tagRepository.saveAndFlush(new Tag().name("batch"));
+        List<Photo> photos = new ArrayList<>();
+        for (int i = 0; i < PHOTOS; i++) {
+            Photo photo = new Photo().fileName("photo" + i).type("jpg");
+            photo.getTags().add(tag);
+            photos.add(photo);
+        }
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        photoRepository.save(photos);
+        em.flush();
+
+        // The ids come from the pooled generator, and the photos and their tags go in as batched statements
+        long statements = statistics.getPrepareStatementCount() - statementsBefore;
+        assertThat(statements).isLessThan(PHOTOS / 10);
+        assertThat(photos).extracting(Photo::getId).doesNotContainNull().doesNotHaveDuplicates();
+        em.clear();
+        assertThat(photoRepository.findOneWithEagerRelationships(photos.get(PHOTOS - 1).getId()).getTags())
+            .extracting(Tag::getId).containsExactly(tag.getId());
+    }
+
+    @Test
+    public void findPageWithEagerRelationships() {
+        Tag tag = tagRepository.saveAndFlush(new Tag().name("paged"));
+        Instant dateCreated = Instant.now();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Photo photo = new Photo().fileName("paged" + i).type("jpg").dateCreated(dateCreated);
+            photo.getTags().add(tag);
+            ids.add(photoRepository.save(photo).getId());
+        }
+        em.flush();
+        em.clear();
+        long queriesBefore = statistics.getQueryExecutionCount();
+
+        // Same dates, the pages are ordered by id in the end
+        Sort sort = new Sort(Sort.Direction.DESC, "dateCreated");
+        Page<Photo> first = photoRepository.findAllByTagWithEagerRelationships(tag, new PageRequest(0, 2, sort));
+        Page<Photo> last = photoRepository.findAllByTagWithEagerRelationships(tag, new PageRequest(2, 2, sort));
+
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        assertThat(first.getContent()).extracting(Photo::getId).containsExactly(ids.get(0), ids.get(1));
+        assertThat(last.getContent()).extracting(Photo::getId).containsExactly(ids.get(4));
+        assertThat(Hibernate.isInitialized(first.getContent().get(0).getTags())).isTrue();
+        // The ids, their count and the photos of the ids, whatever the number of photos; no count for the last page
+        assertThat(statistics.getQueryExecutionCount() - queriesBefore).isEqualTo(5);
+    }
+
+    @Test
+    public void findPageWithPhotoDeletedMeanwhile() {
+        Photo kept = photoRepository.save(new Photo().fileName("kept").type("jpg"));
+        Photo deleted = photoRepository.save(new Photo().fileName("deleted").type("jpg"));
+        em.flush();
+        List<Long> ids = Arrays.asList(deleted.getId(), kept.getId());
+
+        // The photo is deleted between the query of the ids and the query of the photos
+        Page<Photo> page = PagingUtil.toEntities(ids, new PageRequest(0, 2), () -> 2L, idsOfPage -> {
+            photoRepository.delete(deleted.getId());
+            em.flush();
+            return photoRepository.findAllWithEagerRelationshipsByIdIn(idsOfPage);
+        }, Photo::getId);
+
+        assertThat(page.getContent()).extracting(Photo::getId).containsExactly(kept.getId());
+    }
+
+    @Test
+    public void findPageBySubtree() {
+        Tag holiday = tagRepository.save(new Tag().name("holiday"));
+        Tag beach = tagRepository.save(new Tag().name("beach").parentTag(holiday));
+        Tag sunset = tagRepository.save(new Tag().name("sunset").parentTag(beach));
+        Tag work = tagRepository.save(new Tag().name("work"));
+        Photo onHoliday = photoRepository.save(new Photo().fileName("holiday").type("jpg").tags(new HashSet<>(Collections.singletonList(holiday))));
+        Photo onBeachAtSunset = photoRepository.save(new Photo().fileName("beach").type("jpg").tags(new HashSet<>(Arrays.asList(beach, sunset))));
+        Photo atSunset = photoRepository.save(new Photo().fileName("sunset").type("jpg").tags(new HashSet<>(Collections.singletonList(sunset))));
+        photoRepository.save(new Photo().fileName("work").type("jpg").tags(new HashSet<>(Collections.singletonList(work))));
+        em.flush();
+        em.clear();
+
+        // A photo of two tags of the subtree is listed once
+        Sort sort = new Sort(Sort.Direction.ASC, "fileName");
+        Page<Photo> first = photoRepository.findAllBySubtreeWithEagerRelationships(holiday, new PageRequest(0, 2, sort),
+            () -> photoRepository.countBySubtree(holiday.getId()));
+        Page<Photo> last = photoRepository.findAllBySubtreeWithEagerRelationships(holiday, new PageRequest(1, 2, sort),
+            () -> photoRepository.countBySubtree(holiday.getId()));
+
+        assertThat(first.getTotalElements()).isEqualTo(3);
+        assertThat(first.getContent()).extracting(Photo::getId).containsExactly(onBeachAtSunset.getId(), onHoliday.getId());
+        assertThat(last.getContent()).extracting(Photo::getId).containsExactly(atSunset.getId());
+        assertThat(Hibernate.isInitialized(first.getContent().get(0).getTags())).isTrue();
+        assertThat(photoRepository.countBySubtree(beach.getId())).isEqualTo(2);
+        assertThat(photoRepository.countBySubtree(work.getId())).isEqualTo(1);
+    }
+}
@@ -0,0 +1,87 @@
+package com.gparente.photoorganizer.repository;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Tag;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the TagRepository, and the "tag_closure" table maintained by the TagClosureListener.
+ *
+ * @see TagRepository
+ * @see TagClosureListener
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+@Transactional
+public class TagRepositoryIntTest {
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private Tag root;
+
+    private Tag holiday;
+
+    private Tag beach;
+
+    private Tag sunset;
+
+    @Before
+    public void init() {
+        root = tagRepository.save(new Tag().name("root"));
+        holiday = tagRepository.save(new Tag().name("holiday").parentTag(root));
+        beach = tagRepository.save(new Tag().name("beach").parentTag(holiday));
+        sunset = tagRepository.save(new Tag().name("sunset").parentTag(beach));
+        em.flush();
+    }
+
+    @Test
+    public void findSubtreeAndAncestors() {
+        assertThat(tagRepository.findSubtree(holiday.getId())).containsExactly(holiday, beach, sunset);
+        assertThat(tagRepository.findSubtree(sunset.getId())).containsExactly(sunset);
+        assertThat(tagRepository.findAncestors(sunset.getId())).containsExactly(beach, holiday, root);
+        assertThat(tagRepository.findAncestors(root.getId())).isEmpty();
+    }
+
+    @Test
+    public void moveSubtree() {
+        Tag work = tagRepository.save(new Tag().name("work").parentTag(root));
+        em.flush();
+
+        beach.setParentTag(work);
+        em.flush();
+
+        assertThat(tagRepository.findAncestors(sunset.getId())).containsExactly(beach, work, root);
+        assertThat(tagRepository.findSubtree(holiday.getId())).containsExactly(holiday);
+        assertThat(tagRepository.findSubtree(work.getId())).containsExactly(work, beach, sunset);
+
+        // Out of the tree
+        beach.setParentTag(null);
+        em.flush();
+
+        assertThat(tagRepository.findAncestors(sunset.getId())).containsExactly(beach);
+        assertThat(tagRepository.findSubtree(root.getId())).containsExactly(root, holiday, work);
+    }
+
+    @Test
+    public void deleteLeaf() {
+        tagRepository.delete(sunset);
+        em.flush();
+
+        assertThat(tagRepository.findSubtree(holiday.getId())).containsExactly(holiday, beach);
+        assertThat(tagRepository.findAncestors(sunset.getId())).isEmpty();
+    }
+}
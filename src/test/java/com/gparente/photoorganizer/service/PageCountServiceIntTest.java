@@ -0,0 +1,103 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PageCountService service.
+ * <p>
+ * The counts are dropped once the writes are committed, so the photos and the tags are committed and deleted at the end.
+ *
+ * @see PageCountService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+public class PageCountServiceIntTest {
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private PageCountService pageCountService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Tag tag;
+
+    private Photo photo;
+
+    @Before
+    public void init() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        tag = tagRepository.saveAndFlush(new Tag().name("counted"));
+    }
+
+    @After
+    public void cleanup() {
+        if (photo != null && photoRepository.exists(photo.getId())) {
+            photoRepository.delete(photo.getId());
+        }
+        tagRepository.delete(tag.getId());
+    }
+
+    @Test
+    public void countsAreCached() {
+        long photos = pageCountService.countPhotos();
+        long tags = pageCountService.countTags();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        assertThat(pageCountService.countPhotos()).isEqualTo(photos);
+        assertThat(pageCountService.countTags()).isEqualTo(tags);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statementsBefore);
+    }
+
+    @Test
+    public void countsAreDroppedByTheWrites() {
+        long photos = pageCountService.countPhotos();
+        long tags = pageCountService.countTags();
+        assertThat(pageCountService.countPhotosByTag(tag)).isEqualTo(0);
+
+        photo = new Photo().fileName("counted").type("jpg");
+        photo.getTags().add(tag);
+        photo = photoRepository.save(photo);
+        assertThat(pageCountService.countPhotos()).isEqualTo(photos + 1);
+        assertThat(pageCountService.countPhotosByTag(tag)).isEqualTo(1);
+
+        // A change of the tags of a photo changes the photos of the tags
+        photo = photoRepository.findOneWithEagerRelationships(photo.getId());
+        photo.getTags().clear();
+        photo = photoRepository.save(photo);
+        assertThat(pageCountService.countPhotosByTag(tag)).isEqualTo(0);
+
+        photoRepository.delete(photo.getId());
+        assertThat(pageCountService.countPhotos()).isEqualTo(photos);
+
+        Tag other = tagRepository.save(new Tag().name("other"));
+        assertThat(pageCountService.countTags()).isEqualTo(tags + 1);
+        tagRepository.delete(other.getId());
+        assertThat(pageCountService.countTags()).isEqualTo(tags);
+    }
+}
@@ -0,0 +1,108 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PhotoDerivativeService service.
+ * <p>
+ * The generation runs on the derivatives executor, out of the test transaction, so the photos are committed and deleted at the end.
+ *
+ * @see PhotoDerivativeService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+public class PhotoDerivativeServiceIntTest {
+
+    private static final String TYPE = "jpg";
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private PhotoDerivativeService photoDerivativeService;
+
+    private Photo photo;
+
+    @Before
+    public void init() {
+        photo = new Photo()
+            .fileName("derivative-" + RandomStringUtils.randomAlphanumeric(10))
+            .type(TYPE)
+            .derivativeStatus(DerivativeStatus.PENDING);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        photoRepository.delete(photo.getId());
+        photoStorage.delete(photo, photoDerivativeService.getDerivativeNames());
+    }
+
+    @Test
+    public void generateDerivatives() throws Exception {
+        photoStorage.store(photo, Files.newInputStream(Paths.get("source", "photo1." + TYPE)));
+        photoRepository.saveAndFlush(photo);
+
+        photoDerivativeService.generateDerivatives(photo);
+
+        assertThat(awaitDerivativeStatus()).isEqualTo(DerivativeStatus.READY);
+        BufferedImage thumbnail = ImageIO.read(photoDerivativeService.getThumbnailPath(photo).toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(400);
+        for (int size : photoDerivativeService.getSizes()) {
+            BufferedImage derivative = ImageIO.read(photoDerivativeService.getDerivativePath(photo, size).toFile());
+            assertThat(derivative.getWidth()).isEqualTo(size);
+        }
+    }
+
+    @Test
+    public void generateDerivativesOfMissingImage() throws Exception {
+        String contentHash = RandomStringUtils.randomNumeric(64);
+        photo.contentHash(contentHash).path("00/00/" + contentHash + "." + TYPE);
+        photoRepository.saveAndFlush(photo);
+
+        photoDerivativeService.generateDerivatives(photo);
+
+        assertThat(awaitDerivativeStatus()).isEqualTo(DerivativeStatus.FAILED);
+    }
+
+    @Test
+    public void requeuePendingPhotos() throws Exception {
+        String contentHash = RandomStringUtils.randomNumeric(64);
+        photo.contentHash(contentHash).path("00/00/" + contentHash + "." + TYPE);
+        photoRepository.saveAndFlush(photo);
+
+        photoDerivativeService.requeuePendingPhotos();
+
+        assertThat(awaitDerivativeStatus()).isEqualTo(DerivativeStatus.FAILED);
+    }
+
+    private DerivativeStatus awaitDerivativeStatus() throws InterruptedException {
+        DerivativeStatus status = DerivativeStatus.PENDING;
+        for (int i = 0; i < 100 && status == DerivativeStatus.PENDING; i++) {
+            Thread.sleep(100);
+            status = photoRepository.findOne(photo.getId()).getDerivativeStatus();
+        }
+        return status;
+    }
+}
@@ -0,0 +1,176 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.repository.UserRepository;
+import com.gparente.photoorganizer.service.dto.PhotoImportDTO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the PhotoImportService service.
+ * <p>
+ * The import runs in background, out of any test transaction, so the photos and tags are committed and deleted at the end.
+ *
+ * @see PhotoImportService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+public class PhotoImportServiceIntTest {
+
+    private static final String FOLDER = "import-holiday";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private PhotoDerivativeService photoDerivativeService;
+
+    @Autowired
+    private PhotoImportService photoImportService;
+
+    private Path directory;
+
+    @Before
+    public void init() throws Exception {
+        directory = folder.getRoot().toPath();
+        Files.createDirectories(directory.resolve(FOLDER).resolve("beach"));
+        this.writeImage(directory.resolve(FOLDER).resolve("beach").resolve("sea.jpg"), Color.BLUE);
+        this.writeImage(directory.resolve(FOLDER).resolve("hotel.png"), Color.RED);
+        Files.write(directory.resolve(FOLDER).resolve("notes.txt"), "not a photo".getBytes());
+    }
+
+    @After
+    public void cleanup() {
+        for (Photo photo : this.getImportedPhotos()) {
+            photoRepository.delete(photo.getId());
+            photoStorage.delete(photo, photoDerivativeService.getDerivativeNames());
+        }
+        tagRepository.findFirstByParentTagIsNullAndName(FOLDER).ifPresent(holiday -> {
+            tagRepository.findSonsOfTag(holiday).forEach(tagRepository::delete);
+            tagRepository.delete(holiday);
+        });
+    }
+
+    @Test
+    public void importDirectory() throws Exception {
+        PhotoImportDTO result = this.awaitImport(photoImportService.startImport(directory, userRepository.findOne(3L)));
+
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getAlreadyImported()).isEqualTo(0);
+        assertThat(result.getFailed()).isEqualTo(0);
+
+        Tag holiday = tagRepository.findFirstByParentTagIsNullAndName(FOLDER).get();
+        Tag beach = tagRepository.findFirstByParentTagAndName(holiday, "beach").get();
+        List<Photo> photos = this.getImportedPhotos();
+        assertThat(photos).extracting(Photo::getFileName).containsExactlyInAnyOrder("sea", "hotel");
+        for (Photo photo : photos) {
+            Photo saved = photoRepository.findOneWithEagerRelationships(photo.getId());
+            assertThat(saved.getTags()).extracting(Tag::getId)
+                .containsExactly("sea".equals(photo.getFileName()) ? beach.getId() : holiday.getId());
+            assertThat(saved.getUser().getId()).isEqualTo(3L);
+            assertThat(saved.getDerivativeStatus()).isEqualTo(DerivativeStatus.READY);
+            assertThat(Files.exists(photoStorage.getOriginal(saved))).isTrue();
+            assertThat(Files.exists(photoDerivativeService.getThumbnailPath(saved))).isTrue();
+        }
+    }
+
+    @Test
+    public void resumeImport() throws Exception {
+        this.awaitImport(photoImportService.startImport(directory, null));
+        this.writeImage(directory.resolve(FOLDER).resolve("beach").resolve("sand.jpg"), Color.YELLOW);
+
+        PhotoImportDTO result = this.awaitImport(photoImportService.startImport(directory, null));
+
+        assertThat(result.getTotal()).isEqualTo(3);
+        assertThat(result.getAlreadyImported()).isEqualTo(2);
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(this.getImportedPhotos()).hasSize(3);
+    }
+
+    @Test
+    public void importRootFile() throws Exception {
+        Path rootDirectory = folder.newFolder().toPath();
+        this.writeImage(rootDirectory.resolve("sand.jpg"), Color.YELLOW);
+        Tag rootTag = tagRepository.save(new Tag().name("ROOT"));
+        try {
+            PhotoImportDTO result = this.awaitImport(photoImportService.startImport(rootDirectory, null));
+
+            assertThat(result.getImported()).isEqualTo(1);
+            Photo saved = photoRepository.findOneWithEagerRelationships(this.getImportedPhotos().get(0).getId());
+            assertThat(saved.getTags()).extracting(Tag::getId).containsExactly(rootTag.getId());
+        } finally {
+            this.cleanup();
+            tagRepository.delete(rootTag);
+        }
+    }
+
+    @Test
+    public void importMissingDirectory() {
+        assertThatThrownBy(() -> photoImportService.startImport(directory.resolve("missing"), null))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<Photo> getImportedPhotos() {
+        return photoRepository.findAll().stream()
+            .filter(photo -> photo.getFileName() != null && photo.getFileName().matches("sea|hotel|sand"))
+            .collect(Collectors.toList());
+    }
+
+    private PhotoImportDTO awaitImport(PhotoImportDTO started) throws InterruptedException {
+        assertThat(started.isRunning()).isTrue();
+        PhotoImportDTO progress = started;
+        for (int i = 0; i < 100 && progress.isRunning(); i++) {
+            Thread.sleep(100);
+            progress = photoImportService.getImport().get();
+        }
+        return progress;
+    }
+
+    private void writeImage(Path file, Color color) throws Exception {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 64, 48);
+        graphics.dispose();
+        String name = file.getFileName().toString();
+        ImageIO.write(image, name.substring(name.lastIndexOf('.') + 1), file.toFile());
+    }
+}
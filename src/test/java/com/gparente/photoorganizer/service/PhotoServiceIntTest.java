@@ -0,0 +1,108 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.PhotoOrganizerApp;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.repository.PhotoRepository;
+import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.service.dto.PhotoUploadResultDTO;
+import com.gparente.photoorganizer.service.util.HashUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the PhotoService service.
+ * <p>
+ * The photos are saved in transactions of their own, so they are committed and deleted at the end.
+ *
+ * @see PhotoService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PhotoOrganizerApp.class)
+public class PhotoServiceIntTest {
+
+    private static final Long USER_ID = 3L;
+
+    @Autowired
+    private PhotoRepository photoRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private PhotoDerivativeService photoDerivativeService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    private Tag tag;
+
+    private final List<Photo> photos = new ArrayList<>();
+
+    @Before
+    public void init() {
+        tag = tagRepository.saveAndFlush(new Tag().name("batch").type("event"));
+    }
+
+    @After
+    public void cleanup() {
+        for (Photo photo : photos) {
+            photoRepository.delete(photo.getId());
+        }
+        if (!photos.isEmpty()) {
+            photoStorage.delete(photos.get(0), photoDerivativeService.getDerivativeNames());
+        }
+        tagRepository.delete(tag.getId());
+    }
+
+    @Test
+    public void createPhotos() throws Exception {
+        byte[] content = Files.readAllBytes(Paths.get("source", "photo1.jpg"));
+        List<MultipartFile> images = Arrays.asList(
+            new MockMultipartFile("images", "first.jpg", "image/jpeg", content),
+            new MockMultipartFile("images", "empty.jpg", "image/jpeg", new byte[0]),
+            new MockMultipartFile("images", "noextension", "image/jpeg", content),
+            new MockMultipartFile("images", "second.jpg", "image/jpeg", content));
+
+        List<PhotoUploadResultDTO> results = photoService.createPhotos(images, Collections.singletonList(tag.getId()), USER_ID);
+
+        assertThat(results).extracting(PhotoUploadResultDTO::getFileName)
+            .containsExactly("first.jpg", "empty.jpg", "noextension", "second.jpg");
+        assertThat(results).extracting(PhotoUploadResultDTO::isCreated).containsExactly(true, false, false, true);
+        assertThat(results.get(1).getError()).isNotEmpty();
+        assertThat(results.get(2).getError()).isNotEmpty();
+
+        for (PhotoUploadResultDTO result : Arrays.asList(results.get(0), results.get(3))) {
+            Photo photo = photoRepository.findOneWithEagerRelationships(result.getPhotoId());
+            photos.add(photo);
+            assertThat(photo.getContentHash()).isEqualTo(HashUtil.sha256Hex(content)).isEqualTo(result.getContentHash());
+            assertThat(photo.getTags()).extracting(Tag::getId).containsExactly(tag.getId());
+            assertThat(photo.getUser().getId()).isEqualTo(USER_ID);
+        }
+        assertThat(photos.get(0).getFileName()).isEqualTo("first");
+        assertThat(photos.get(0).getType()).isEqualTo("jpg");
+        // Same content, same files
+        assertThat(photos.get(1).getPath()).isEqualTo(photos.get(0).getPath());
+        assertThat(Files.readAllBytes(photoStorage.getOriginal(photos.get(0)))).isEqualTo(content);
+    }
+}
@@ -0,0 +1,107 @@
+package com.gparente.photoorganizer.service;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the ThumbnailCache service.
+ *
+ * @see ThumbnailCache
+ */
+public class ThumbnailCacheUnitTest {
+
+    private ApplicationProperties applicationProperties;
+
+    private ThumbnailCache thumbnailCache;
+
+    private Path basePath;
+
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        basePath = Files.createTempDirectory("thumbnail-cache");
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getStorage().setBasePath(basePath.toString());
+        applicationProperties.getDerivatives().setThumbnailPackSize(1024);
+        thumbnailCache = new ThumbnailCache(applicationProperties);
+        file = Files.write(basePath.resolve("photo-thumbnail.jpg"), new byte[]{1, 2, 3});
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        thumbnailCache.closePack();
+        FileSystemUtils.deleteRecursively(basePath.toFile());
+    }
+
+    @Test
+    public void thumbnailIsReadOnce() throws IOException {
+        ThumbnailCache.Thumbnail thumbnail = thumbnailCache.get(file);
+        Files.write(file, new byte[]{4, 5});
+
+        assertThat(toArray(thumbnailCache.get(file).getBytes())).containsExactly(1, 2, 3);
+        assertThat(toArray(thumbnail.getBytes())).containsExactly(1, 2, 3);
+        assertThat(thumbnail.getBytes().isDirect()).isTrue();
+        assertThat(thumbnail.getBytes().isReadOnly()).isTrue();
+    }
+
+    @Test
+    public void thumbnailIsReadOnceWithoutPack() throws IOException {
+        thumbnailCache.closePack();
+        applicationProperties.getDerivatives().setThumbnailPackSize(0);
+        thumbnailCache = new ThumbnailCache(applicationProperties);
+        ThumbnailCache.Thumbnail thumbnail = thumbnailCache.get(file);
+        Files.write(file, new byte[]{4, 5});
+
+        assertThat(thumbnailCache.get(file)).isSameAs(thumbnail);
+    }
+
+    @Test
+    public void packedThumbnailIsKeptAcrossRestarts() throws IOException {
+        thumbnailCache.get(file);
+        thumbnailCache.closePack();
+        Files.delete(file);
+
+        thumbnailCache = new ThumbnailCache(applicationProperties);
+
+        assertThat(toArray(thumbnailCache.get(file).getBytes())).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void evictedThumbnailIsReadAgain() throws IOException {
+        thumbnailCache.get(file);
+        Files.write(file, new byte[]{4, 5});
+        thumbnailCache.evict(file);
+
+        ThumbnailCache.Thumbnail thumbnail = thumbnailCache.get(file);
+
+        assertThat(toArray(thumbnail.getBytes())).containsExactly(4, 5);
+        assertThat(thumbnail.getLastModified()).isEqualTo(Files.getLastModifiedTime(file).toMillis());
+    }
+
+    @Test
+    public void missingThumbnail() throws IOException {
+        Files.delete(file);
+
+        assertThatThrownBy(() -> thumbnailCache.get(file)).isInstanceOf(NoSuchFileException.class);
+    }
+
+    private static byte[] toArray(ByteBuffer bytes) {
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+}
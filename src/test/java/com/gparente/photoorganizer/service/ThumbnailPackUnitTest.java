@@ -0,0 +1,167 @@
+package com.gparente.photoorganizer.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the ThumbnailPack.
+ *
+ * @see ThumbnailPack
+ */
+public class ThumbnailPackUnitTest {
+
+    private static final int CAPACITY = 1024;
+
+    private Path directory;
+
+    private ThumbnailPack thumbnailPack;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("thumbnail-pack");
+        thumbnailPack = ThumbnailPack.open(directory, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        thumbnailPack.close();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Test
+    public void addAndGet() {
+        assertThat(thumbnailPack.add("a", bytes(1, 2, 3), 42L, thumbnailPack.beginLoad("a"))).isTrue();
+
+        ThumbnailCache.Thumbnail thumbnail = thumbnailPack.get("a");
+        assertThat(toArray(thumbnail.getBytes())).containsExactly(1, 2, 3);
+        assertThat(thumbnail.getBytes().isReadOnly()).isTrue();
+        assertThat(thumbnail.getLastModified()).isEqualTo(42L);
+        assertThat(thumbnailPack.get("b")).isNull();
+    }
+
+    @Test
+    public void thumbnailRemovedMeanwhileIsNotAdded() throws IOException {
+        long generation = thumbnailPack.beginLoad("a");
+        thumbnailPack.remove("a");
+
+        assertThat(thumbnailPack.add("a", bytes(1, 2, 3), 42L, generation)).isFalse();
+        assertThat(thumbnailPack.get("a")).isNull();
+    }
+
+    @Test
+    public void otherThumbnailRemovedMeanwhileIsIgnored() throws IOException {
+        long generation = thumbnailPack.beginLoad("a");
+        thumbnailPack.remove("b");
+
+        assertThat(thumbnailPack.add("a", bytes(1, 2, 3), 42L, generation)).isTrue();
+    }
+
+    @Test
+    public void fullPackAddsNothing() {
+        assertThat(thumbnailPack.add("a", ByteBuffer.allocate(CAPACITY), 42L, thumbnailPack.beginLoad("a"))).isFalse();
+        assertThat(thumbnailPack.size()).isZero();
+    }
+
+    @Test
+    public void thumbnailsAreReadBackOnOpen() throws IOException {
+        thumbnailPack.add("a", bytes(1, 2, 3), 42L, thumbnailPack.beginLoad("a"));
+        thumbnailPack.add("b", bytes(4), 43L, thumbnailPack.beginLoad("b"));
+        thumbnailPack.add("a", bytes(5, 6), 44L, thumbnailPack.beginLoad("a"));
+        thumbnailPack.remove("b");
+        this.reopen();
+
+        assertThat(thumbnailPack.size()).isEqualTo(1);
+        assertThat(toArray(thumbnailPack.get("a").getBytes())).containsExactly(5, 6);
+        assertThat(thumbnailPack.get("a").getLastModified()).isEqualTo(44L);
+        assertThat(thumbnailPack.get("b")).isNull();
+    }
+
+    @Test
+    public void tornRecordIsOverwritten() throws IOException {
+        thumbnailPack.add("a", bytes(1, 2, 3), 42L, thumbnailPack.beginLoad("a"));
+        thumbnailPack.add("b", bytes(4, 5, 6), 43L, thumbnailPack.beginLoad("b"));
+        thumbnailPack.close();
+        // The last byte of "b" is lost, as in a crash during its write
+        try (FileChannel channel = FileChannel.open(directory.resolve("thumbnails.pack"), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), 2 * (20 + 1 + 3) - 1);
+        }
+        thumbnailPack = ThumbnailPack.open(directory, CAPACITY);
+
+        assertThat(thumbnailPack.get("b")).isNull();
+        thumbnailPack.add("c", bytes(7), 44L, thumbnailPack.beginLoad("c"));
+        this.reopen();
+
+        assertThat(toArray(thumbnailPack.get("a").getBytes())).containsExactly(1, 2, 3);
+        assertThat(toArray(thumbnailPack.get("c").getBytes())).containsExactly(7);
+        assertThat(thumbnailPack.get("b")).isNull();
+    }
+
+    @Test
+    public void compactionReclaimsTheSpace() throws IOException {
+        ByteBuffer large = ByteBuffer.allocate(CAPACITY / 2);
+        thumbnailPack.add("a", large, 42L, thumbnailPack.beginLoad("a"));
+        thumbnailPack.add("b", bytes(1, 2, 3), 43L, thumbnailPack.beginLoad("b"));
+        ThumbnailCache.Thumbnail served = thumbnailPack.get("b");
+        thumbnailPack.remove("a");
+        assertThat(thumbnailPack.add("c", large, 44L, thumbnailPack.beginLoad("c"))).isFalse();
+        assertThat(thumbnailPack.isWasteful()).isTrue();
+
+        thumbnailPack.compact();
+
+        assertThat(thumbnailPack.isWasteful()).isFalse();
+        assertThat(thumbnailPack.add("c", large, 44L, thumbnailPack.beginLoad("c"))).isTrue();
+        // The thumbnails served before the compaction are still readable
+        assertThat(toArray(served.getBytes())).containsExactly(1, 2, 3);
+        this.reopen();
+        assertThat(thumbnailPack.get("a")).isNull();
+        assertThat(toArray(thumbnailPack.get("b").getBytes())).containsExactly(1, 2, 3);
+        assertThat(thumbnailPack.get("c").getBytes().remaining()).isEqualTo(CAPACITY / 2);
+    }
+
+    @Test
+    public void fullPackIsCompactedOnRemove() throws IOException {
+        ByteBuffer large = ByteBuffer.allocate(CAPACITY - 20 - 1);
+        assertThat(thumbnailPack.add("a", large, 42L, thumbnailPack.beginLoad("a"))).isTrue();
+
+        thumbnailPack.remove("a");
+        this.reopen();
+
+        assertThat(thumbnailPack.get("a")).isNull();
+    }
+
+    @Test
+    public void packIsOpenOnce() throws IOException {
+        assertThat(ThumbnailPack.open(directory, CAPACITY)).isNull();
+    }
+
+    private void reopen() throws IOException {
+        thumbnailPack.close();
+        thumbnailPack = ThumbnailPack.open(directory, CAPACITY);
+    }
+
+    private static ByteBuffer bytes(int... values) {
+        ByteBuffer bytes = ByteBuffer.allocate(values.length);
+        for (int value : values) {
+            bytes.put((byte) value);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer bytes) {
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+}
@@ -0,0 +1,45 @@
+package com.gparente.photoorganizer.service.image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The photo of the image benchmarks: a 20 megapixels JPEG, resized to the width of a thumbnail.
+ */
+final class BenchmarkPhoto {
+
+    static final int WIDTH = 5472;
+
+    static final int HEIGHT = 3648;
+
+    static final int THUMBNAIL_WIDTH = 400;
+
+    private BenchmarkPhoto() {
+    }
+
+    /**
+     * A photo-like image: smooth gradients with some noise, so that the JPEG has a realistic content.
+     *
+     * @return the bytes of the JPEG
+     * @throws IOException if the JPEG can't be written
+     */
+    static byte[] jpeg() throws IOException {
+        BufferedImage source = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] data = ((DataBufferByte) source.getRaster().getDataBuffer()).getData();
+        Random random = new Random(42);
+        for (int y = 0, i = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++, i += 3) {
+                data[i] = (byte) (x * 255 / WIDTH + random.nextInt(16));
+                data[i + 1] = (byte) (y * 255 / HEIGHT + random.nextInt(16));
+                data[i + 2] = (byte) ((x + y) * 127 / (WIDTH + HEIGHT) + random.nextInt(16));
+            }
+        }
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(source, "jpg", jpeg);
+        return jpeg.toByteArray();
+    }
+}
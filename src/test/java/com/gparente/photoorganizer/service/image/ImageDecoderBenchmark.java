@@ -0,0 +1,66 @@
+package com.gparente.photoorganizer.service.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the thumbnail generation of a 20 megapixels JPEG file, decode included,
+ * with the subsampled decode of {@link ImageDecoder} and with a full resolution {@code ImageIO.read}.
+ * <p>
+ * Add {@code -prof gc} to the JMH options to compare the allocations too.
+ * Run it with the main method, or with:
+ * {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.gparente.photoorganizer.service.image.ImageDecoderBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageDecoderBenchmark {
+
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.write(Files.createTempFile("image-decoder-benchmark", ".jpg"), BenchmarkPhoto.jpeg());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public BufferedImage fullDecode() throws IOException {
+        return ImageResampler.resizeToWidth(ImageIO.read(file.toFile()), BenchmarkPhoto.THUMBNAIL_WIDTH);
+    }
+
+    @Benchmark
+    public BufferedImage subsampledDecode() throws IOException {
+        return ImageResampler.resizeToWidth(ImageDecoder.decodeForWidth(file, BenchmarkPhoto.THUMBNAIL_WIDTH), BenchmarkPhoto.THUMBNAIL_WIDTH);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageDecoderBenchmark.class.getName()).build()).run();
+    }
+}
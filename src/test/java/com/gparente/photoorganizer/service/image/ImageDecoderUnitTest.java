@@ -0,0 +1,83 @@
+package com.gparente.photoorganizer.service.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for the ImageDecoder decoder.
+ *
+ * @see ImageDecoder
+ */
+public class ImageDecoderUnitTest {
+
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        BufferedImage image = new BufferedImage(2000, 1000, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(0, 0, 2000, 1000);
+        graphics.dispose();
+
+        file = Files.createTempFile("image-decoder", ".jpg");
+        ImageIO.write(image, "jpg", file.toFile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void decodeSubsampled() throws IOException {
+        BufferedImage image = ImageDecoder.decodeForWidth(file, 400);
+
+        assertThat(image.getWidth()).isEqualTo(1000);
+        assertThat(image.getHeight()).isEqualTo(500);
+    }
+
+    @Test
+    public void decodeFullSizeForLargeTarget() throws IOException {
+        BufferedImage image = ImageDecoder.decodeForWidth(file, 1500);
+
+        assertThat(image.getWidth()).isEqualTo(2000);
+        assertThat(image.getHeight()).isEqualTo(1000);
+    }
+
+    @Test
+    public void decodeForWidthsSubsampled() throws IOException {
+        BufferedImage image = ImageDecoder.decodeForWidths(file, 800);
+
+        assertThat(image.getWidth()).isEqualTo(1000);
+        assertThat(image.getHeight()).isEqualTo(500);
+    }
+
+    @Test(expected = IOException.class)
+    public void decodeNotAnImage() throws IOException {
+        Files.write(file, new byte[]{1, 2, 3});
+
+        ImageDecoder.decodeForWidth(file, 400);
+    }
+
+    @Test
+    public void getSubsampling() {
+        assertThat(ImageDecoder.getSubsampling(5472, 400, 2)).isEqualTo(6);
+        assertThat(ImageDecoder.getSubsampling(800, 400, 2)).isEqualTo(1);
+        assertThat(ImageDecoder.getSubsampling(300, 400, 2)).isEqualTo(1);
+        // The largest derivative of a 20 megapixels photo
+        assertThat(ImageDecoder.getSubsampling(5472, 2048, 1)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,63 @@
+package com.gparente.photoorganizer.service.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the thumbnail generation of a 20 megapixels JPEG, with {@link ImageResampler}
+ * and with the previous {@code Image.getScaledInstance(SCALE_SMOOTH)} path.
+ * <p>
+ * The JPEG is decoded once in the setup, so only the resizes are measured.
+ * Run it with the main method, or with:
+ * {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.gparente.photoorganizer.service.image.ImageResamplerBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageResamplerBenchmark {
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() throws IOException {
+        image = ImageIO.read(new ByteArrayInputStream(BenchmarkPhoto.jpeg()));
+    }
+
+    @Benchmark
+    public BufferedImage scaledInstance() {
+        Image imgThumb = image.getScaledInstance(BenchmarkPhoto.THUMBNAIL_WIDTH, -1, Image.SCALE_SMOOTH);
+        BufferedImage imgBI = new BufferedImage(imgThumb.getWidth(null), imgThumb.getHeight(null), BufferedImage.TYPE_INT_RGB);
+        imgBI.createGraphics().drawImage(imgThumb, 0, 0, null);
+        return imgBI;
+    }
+
+    @Benchmark
+    public BufferedImage imageResampler() {
+        return ImageResampler.resizeToWidth(image, BenchmarkPhoto.THUMBNAIL_WIDTH);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ImageResamplerBenchmark.class.getName()).build()).run();
+    }
+}
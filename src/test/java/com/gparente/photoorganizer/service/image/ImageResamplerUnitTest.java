@@ -0,0 +1,88 @@
+package com.gparente.photoorganizer.service.image;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Test class for the ImageResampler resampling engine.
+ *
+ * @see ImageResampler
+ */
+public class ImageResamplerUnitTest {
+
+    @Test
+    public void resizeToWidthKeepsAspectRatio() {
+        BufferedImage source = new BufferedImage(4000, 3000, BufferedImage.TYPE_3BYTE_BGR);
+
+        BufferedImage target = ImageResampler.resizeToWidth(source, 400);
+
+        assertThat(target.getWidth()).isEqualTo(400);
+        assertThat(target.getHeight()).isEqualTo(300);
+        assertThat(target.getType()).isEqualTo(BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Test
+    public void resizeKeepsFlatColor() {
+        // Odd sizes, so that both the halving and the last Lanczos step are used
+        BufferedImage source = filledImage(1999, 1333, BufferedImage.TYPE_3BYTE_BGR, new Color(12, 200, 99));
+
+        BufferedImage target = ImageResampler.resizeToWidth(source, 400);
+
+        for (int y = 0; y < target.getHeight(); y += 17) {
+            for (int x = 0; x < target.getWidth(); x += 13) {
+                assertThat(target.getRGB(x, y) & 0xffffff).isEqualTo(0x0cc863);
+            }
+        }
+    }
+
+    @Test
+    public void resizeAveragesColors() {
+        // Vertical stripes of one pixel, black and white, become a uniform gray
+        BufferedImage source = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < source.getWidth(); x += 2) {
+            for (int y = 0; y < source.getHeight(); y++) {
+                source.setRGB(x, y, 0xffffff);
+            }
+        }
+
+        BufferedImage target = ImageResampler.resizeToWidth(source, 300);
+
+        int gray = target.getRGB(150, 100) & 0xff;
+        assertThat(gray).isBetween(126, 129);
+    }
+
+    @Test
+    public void resizeSmallerImage() {
+        BufferedImage source = filledImage(100, 50, BufferedImage.TYPE_INT_ARGB, Color.RED);
+
+        BufferedImage target = ImageResampler.resizeToWidth(source, 400);
+
+        assertThat(target.getWidth()).isEqualTo(400);
+        assertThat(target.getHeight()).isEqualTo(200);
+        assertThat(target.getRGB(200, 100) & 0xffffff).isEqualTo(0xff0000);
+    }
+
+    @Test
+    public void readPixelsOfAnyImageType() {
+        BufferedImage bgr = filledImage(10, 10, BufferedImage.TYPE_3BYTE_BGR, new Color(1, 2, 3));
+        BufferedImage gray = filledImage(10, 10, BufferedImage.TYPE_BYTE_GRAY, Color.WHITE);
+
+        assertThat(ImageResampler.toRgbPixels(bgr)[0]).isEqualTo(0x010203);
+        assertThat(ImageResampler.toRgbPixels(gray)[0] & 0xffffff).isEqualTo(0xffffff);
+        assertThat(ImageResampler.toRgbPixels(bgr.getSubimage(2, 2, 5, 5))).hasSize(25);
+    }
+
+    private BufferedImage filledImage(int width, int height, int type, Color color) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+}
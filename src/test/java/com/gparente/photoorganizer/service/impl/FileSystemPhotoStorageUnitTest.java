@@ -0,0 +1,189 @@
+package com.gparente.photoorganizer.service.impl;
+
+import com.gparente.photoorganizer.config.ApplicationProperties;
+import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.service.util.HashUtil;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the FileSystemPhotoStorage.
+ *
+ * @see FileSystemPhotoStorage
+ */
+public class FileSystemPhotoStorageUnitTest {
+
+    private static final byte[] CONTENT = "photo content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path basePath;
+
+    private Path legacyPath;
+
+    private FileSystemPhotoStorage photoStorage;
+
+    @Before
+    public void setup() throws Exception {
+        basePath = folder.newFolder("photos").toPath();
+        legacyPath = folder.newFolder("source").toPath();
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getStorage().setBasePath(basePath.toString());
+        applicationProperties.getStorage().setLegacyPath(legacyPath.toString());
+        photoStorage = new FileSystemPhotoStorage(applicationProperties);
+    }
+
+    @Test
+    public void storeShardedByContentHash() throws Exception {
+        Photo photo = new Photo().fileName("photo").type("jpg");
+
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+
+        String contentHash = HashUtil.sha256Hex(CONTENT);
+        assertThat(photo.getContentHash()).isEqualTo(contentHash);
+        assertThat(photo.getPath())
+            .isEqualTo(contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4) + "/" + contentHash + ".jpg");
+        assertThat(Files.readAllBytes(photoStorage.getOriginal(photo))).isEqualTo(CONTENT);
+        assertThat(photoStorage.getDerivative(photo, "thumbnail"))
+            .isEqualTo(basePath.resolve(photo.getPath().replace(".jpg", "-thumbnail.jpg")));
+    }
+
+    @Test
+    public void storeSameContentOnce() throws Exception {
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        Photo copy = new Photo().fileName("copy").type("jpg");
+
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+        photoStorage.store(copy, new ByteArrayInputStream(CONTENT));
+
+        assertThat(copy.getPath()).isEqualTo(photo.getPath());
+        assertThat(this.countFiles()).isEqualTo(1);
+    }
+
+    @Test
+    public void storeFailureLeavesNoFile() throws Exception {
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        InputStream failing = new SequenceInputStream(new ByteArrayInputStream(CONTENT), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+
+        assertThatThrownBy(() -> photoStorage.store(photo, failing)).isInstanceOf(IOException.class);
+
+        assertThat(photo.getPath()).isNull();
+        assertThat(this.countFiles()).isEqualTo(0);
+    }
+
+    @Test
+    public void getLegacyFiles() {
+        Photo photo = new Photo().fileName("photo1").type("jpg");
+
+        assertThat(photoStorage.getOriginal(photo)).isEqualTo(legacyPath.resolve("photo1.jpg"));
+        assertThat(photoStorage.getDerivative(photo, "thumbnail")).isEqualTo(legacyPath.resolve("photo1-thumbnail.jpg"));
+    }
+
+    @Test
+    public void migrateLegacyPhoto() throws Exception {
+        Files.write(legacyPath.resolve("photo1.jpg"), CONTENT);
+        Files.write(legacyPath.resolve("photo1-thumbnail.jpg"), new byte[] {1, 2, 3});
+        Photo photo = new Photo().fileName("photo1").type("jpg");
+
+        photoStorage.migrate(photo, Arrays.asList("thumbnail", "1024"));
+
+        assertThat(photo.getContentHash()).isEqualTo(HashUtil.sha256Hex(CONTENT));
+        assertThat(photo.getPath()).endsWith(photo.getContentHash() + ".jpg");
+        assertThat(Files.readAllBytes(photoStorage.getOriginal(photo))).isEqualTo(CONTENT);
+        assertThat(Files.readAllBytes(photoStorage.getDerivative(photo, "thumbnail"))).isEqualTo(new byte[] {1, 2, 3});
+        assertThat(Files.exists(photoStorage.getDerivative(photo, "1024"))).isFalse();
+        assertThat(Files.exists(legacyPath.resolve("photo1.jpg"))).isTrue();
+    }
+
+    @Test
+    public void deleteFiles() throws Exception {
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+        Files.write(photoStorage.getDerivative(photo, "thumbnail"), new byte[] {1, 2, 3});
+
+        photoStorage.delete(photo, Collections.singletonList("thumbnail"));
+
+        assertThat(Files.exists(photoStorage.getOriginal(photo))).isFalse();
+        assertThat(Files.exists(photoStorage.getDerivative(photo, "thumbnail"))).isFalse();
+    }
+
+    @Test
+    public void deleteUnusedFiles() throws Exception {
+        photoStorage = this.newPhotoStorage(0);
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+
+        photoStorage.deleteUnused(photo, Collections.emptyList(), deleted -> true);
+        assertThat(Files.exists(photoStorage.getOriginal(photo))).isTrue();
+
+        photoStorage.deleteUnused(photo, Collections.emptyList(), deleted -> false);
+        assertThat(Files.exists(photoStorage.getOriginal(photo))).isFalse();
+    }
+
+    @Test
+    public void deleteUnusedFilesAfterTheDelay() throws Exception {
+        photoStorage = this.newPhotoStorage(1);
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+
+        photoStorage.deleteUnused(photo, Collections.emptyList(), deleted -> false);
+        photoStorage.deletePendingFiles();
+        assertThat(Files.exists(photoStorage.getOriginal(photo))).isTrue();
+
+        Thread.sleep(1100);
+        photoStorage.deletePendingFiles();
+        assertThat(Files.exists(photoStorage.getOriginal(photo))).isFalse();
+    }
+
+    @Test
+    public void storeCancelsThePendingDeletion() throws Exception {
+        photoStorage = this.newPhotoStorage(1);
+        Photo photo = new Photo().fileName("photo").type("jpg");
+        photoStorage.store(photo, new ByteArrayInputStream(CONTENT));
+        photoStorage.deleteUnused(photo, Collections.emptyList(), deleted -> false);
+
+        // An upload of the same content, not committed yet when the deletion is due
+        photoStorage.store(new Photo().fileName("upload").type("jpg"), new ByteArrayInputStream(CONTENT));
+        Thread.sleep(1100);
+        photoStorage.deletePendingFiles();
+
+        assertThat(Files.readAllBytes(photoStorage.getOriginal(photo))).isEqualTo(CONTENT);
+    }
+
+    private FileSystemPhotoStorage newPhotoStorage(int deleteDelaySeconds) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getStorage().setBasePath(basePath.toString());
+        applicationProperties.getStorage().setLegacyPath(legacyPath.toString());
+        applicationProperties.getStorage().setDeleteDelaySeconds(deleteDelaySeconds);
+        return new FileSystemPhotoStorage(applicationProperties);
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(basePath)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.gparente.photoorganizer.service.util;
+
+import com.gparente.photoorganizer.domain.Tag;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the TagTree snapshot.
+ *
+ * @see TagTree
+ */
+public class TagTreeUnitTest {
+
+    private TagTree tree;
+
+    @Before
+    public void init() {
+        Tag root = tag(1L, "ROOT", null);
+        Tag holiday = tag(5L, "holiday", root);
+        Tag beach = tag(3L, "beach", holiday);
+        Tag mountain = tag(2L, "mountain", holiday);
+        Tag work = tag(9L, "work", root);
+        Tag orphan = tag(7L, "orphan", null);
+        tree = TagTree.of(Arrays.asList(work, beach, root, orphan, mountain, holiday));
+    }
+
+    @Test
+    public void navigate() {
+        assertThat(tree.size()).isEqualTo(6);
+        assertThat(tree.getRoot().getId()).isEqualTo(1L);
+        assertThat(tree.getTag(3L).getName()).isEqualTo("beach");
+        assertThat(tree.getTag(4L)).isNull();
+        assertThat(tree.getChildren(1L)).extracting(Tag::getId).containsExactly(5L, 9L);
+        assertThat(tree.getChildren(5L)).extracting(Tag::getId).containsExactly(2L, 3L);
+        assertThat(tree.getChildren(3L)).isEmpty();
+        assertThat(tree.getChildren(4L)).isEmpty();
+    }
+
+    @Test
+    public void tagsAreDetachedCopies() {
+        Tag beach = tree.getTag(3L);
+
+        // The parent chain is made of the copies, the photos are not part of the snapshot
+        assertThat(beach.getParentTag()).isSameAs(tree.getTag(5L));
+        assertThat(beach.getParentTag().getParentTag()).isSameAs(tree.getRoot());
+        assertThat(beach.getPhotos()).isNull();
+    }
+
+    private static Tag tag(Long id, String name, Tag parent) {
+        Tag tag = new Tag().name(name).parentTag(parent);
+        tag.setId(id);
+        return tag;
+    }
+}
@@ -2,34 +2,60 @@ package com.gparente.photoorganizer.web.rest;
 
 import com.gparente.photoorganizer.PhotoOrganizerApp;
 
+import com.gparente.photoorganizer.config.ApplicationProperties;
 import com.gparente.photoorganizer.domain.Photo;
+import com.gparente.photoorganizer.domain.Tag;
+import com.gparente.photoorganizer.domain.enumeration.DerivativeStatus;
 import com.gparente.photoorganizer.repository.PhotoRepository;
 import com.gparente.photoorganizer.repository.TagRepository;
 import com.gparente.photoorganizer.repository.UserRepository;
+import com.gparente.photoorganizer.service.PageCountService;
+import com.gparente.photoorganizer.service.PhotoDerivativeService;
+import com.gparente.photoorganizer.service.PhotoService;
+import com.gparente.photoorganizer.service.PhotoStorage;
+import com.gparente.photoorganizer.service.TagTreeService;
+import com.gparente.photoorganizer.service.ThumbnailCache;
 import com.gparente.photoorganizer.web.rest.errors.ExceptionTranslator;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static com.gparente.photoorganizer.web.rest.TestUtil.createFormattingConversionService;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -51,6 +77,13 @@ public class PhotoResourceIntTest {
     private static final String DEFAULT_TYPE = "AAAAAAAAAA";
     private static final String UPDATED_TYPE = "BBBBBBBBBB";
 
+    private static final String DEFAULT_CONTENT_HASH = "AAAAAAAAAA";
+    private static final String UPDATED_CONTENT_HASH = "BBBBBBBBBB";
+
+    // The sample photos are stored in the legacy directory, they are read as photos without a path
+    private static final String SOURCE_FILE_NAME = "photo1";
+    private static final String SOURCE_TYPE = "jpg";
+
     private static final Instant DEFAULT_DATE_CREATED = Instant.ofEpochMilli(0L);
     private static final Instant UPDATED_DATE_CREATED = Instant.now().truncatedTo(ChronoUnit.MILLIS);
 
@@ -63,6 +96,34 @@ public class PhotoResourceIntTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private PhotoDerivativeService photoDerivativeService;
+
+    @Autowired
+    private PhotoService photoService;
+
+    @Autowired
+    private PageCountService pageCountService;
+
+    @Autowired
+    private TagTreeService tagTreeService;
+
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    @Qualifier("thumbnailTaskExecutor")
+    private ThreadPoolTaskExecutor thumbnailTaskExecutor;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -82,7 +143,9 @@ public class PhotoResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final PhotoResource photoResource = new PhotoResource(photoRepository, tagRepository, userRepository);
+        final PhotoResource photoResource = new PhotoResource(photoRepository, tagRepository, userRepository,
+            photoStorage, photoDerivativeService, photoService, pageCountService, tagTreeService, thumbnailCache,
+            thumbnailTaskExecutor, applicationProperties);
         this.restPhotoMockMvc = MockMvcBuilders.standaloneSetup(photoResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -167,6 +230,114 @@ public class PhotoResourceIntTest {
             .andExpect(jsonPath("$.[*].dateCreated").value(hasItem(DEFAULT_DATE_CREATED.toString())));
     }
 
+    @Test
+    @Transactional
+    public void getAllPhotosWithThumbnailUrls() throws Exception {
+        // Initialize the database
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH));
+
+        // Get all the photoList, the thumbnails are only referenced
+        restPhotoMockMvc.perform(get("/api/photos?sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].thumbnailUrl").value(hasItem("/api/photos/" + photo.getId() + "/thumbnail/" + DEFAULT_CONTENT_HASH)))
+            .andExpect(jsonPath("$.[0].thumbnail").doesNotExist());
+    }
+
+    @Test
+    @Transactional
+    public void getAllPhotosWithInlineThumbnails() throws Exception {
+        // Initialize the database
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null));
+        Timer reads = metricRegistry.timer("thumbnail.reads.wait");
+        long readCount = reads.getCount();
+
+        // Get all the photoList, the thumbnails are embedded as data URIs
+        restPhotoMockMvc.perform(get("/api/photos?sort=id,desc&inline=true"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Link", containsString("inline=true")))
+            .andExpect(jsonPath("$.[0].thumbnailUrl").value("/api/photos/" + photo.getId() + "/thumbnail"))
+            .andExpect(jsonPath("$.[0].thumbnail").value(startsWith("data:image/" + SOURCE_TYPE + ";base64,")));
+
+        // The thumbnails are read on the thumbnail pool, their wait is recorded before they are read
+        assertThat(reads.getCount()).isGreaterThan(readCount);
+    }
+
+    @Test
+    @Transactional
+    public void getAllPhotosBySubtree() throws Exception {
+        // Initialize the database
+        Tag parent = tagRepository.saveAndFlush(new Tag().name("parent"));
+        Tag son = tagRepository.saveAndFlush(new Tag().name("son").parentTag(parent));
+        photo.getTags().add(son);
+        photoRepository.saveAndFlush(photo);
+
+        // The photos of the descendants are listed with the photos of the tag
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}/subtree?sort=id,desc", parent.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "1"))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(photo.getId().intValue())));
+
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}", parent.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string("X-Total-Count", "0"));
+    }
+
+    @Test
+    @Transactional
+    public void getAllPhotosByMissingTag() throws Exception {
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}/subtree", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}/thumbnails", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoTimeline() throws Exception {
+        // Initialize the database, with photos of the same date and photos without a date
+        Instant newest = Instant.parse("2100-01-02T00:00:00Z");
+        Instant older = Instant.parse("2100-01-01T00:00:00Z");
+        Photo first = photoRepository.saveAndFlush(new Photo().fileName("timeline1").type("jpg").dateCreated(older));
+        Photo second = photoRepository.saveAndFlush(new Photo().fileName("timeline2").type("jpg").dateCreated(older));
+        Photo third = photoRepository.saveAndFlush(new Photo().fileName("timeline3").type("jpg").dateCreated(newest));
+        Photo undated = photoRepository.saveAndFlush(new Photo().fileName("timeline4").type("jpg"));
+
+        // The first page has the newest photos, then the id breaks the ties
+        MvcResult result = restPhotoMockMvc.perform(get("/api/photos/timeline?size=2"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("X-Total-Count"))
+            .andExpect(header().string("Link", containsString("rel=\"next\"")))
+            .andExpect(jsonPath("$.[*].id").value(contains(third.getId().intValue(), second.getId().intValue())))
+            .andReturn();
+        String cursor = result.getResponse().getHeader("X-Next-Cursor");
+        assertThat(cursor).isNotNull();
+
+        // The next pages follow the cursors without overlap, the photos without a date come last
+        List<Long> ids = new ArrayList<>();
+        while (cursor != null) {
+            result = restPhotoMockMvc.perform(get("/api/photos/timeline?size=2&cursor=" + cursor))
+                .andExpect(status().isOk())
+                .andReturn();
+            for (Object id : JsonPath.<List<Object>>read(result.getResponse().getContentAsString(), "$.[*].id")) {
+                ids.add(((Number) id).longValue());
+            }
+            cursor = result.getResponse().getHeader("X-Next-Cursor");
+        }
+        assertThat(ids).doesNotHaveDuplicates().startsWith(first.getId()).contains(undated.getId())
+            .doesNotContain(third.getId(), second.getId());
+        assertThat(ids.indexOf(undated.getId())).isGreaterThan(ids.indexOf(first.getId()));
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoTimelineWithInvalidCursor() throws Exception {
+        restPhotoMockMvc.perform(get("/api/photos/timeline?cursor=invalid"))
+            .andExpect(status().isBadRequest())
+            .andExpect(header().string("X-photoOrganizerApp-error", "error.invalidcursor"));
+    }
+
     @Test
     @Transactional
     public void getPhoto() throws Exception {
@@ -192,6 +363,181 @@ public class PhotoResourceIntTest {
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    @Transactional
+    public void getPhotoImage() throws Exception {
+        // Initialize the database with a photo whose image is in the source directory
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null));
+        byte[] image = Files.readAllBytes(Paths.get("source", SOURCE_FILE_NAME + "." + SOURCE_TYPE));
+
+        // Get the photo image
+        MvcResult mvcResult = restPhotoMockMvc.perform(get("/api/photos/{id}/image", photo.getId()))
+            .andExpect(request().asyncStarted())
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+            .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, String.valueOf(image.length)))
+            .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+            .andReturn();
+
+        // Wait for the image to be streamed
+        mvcResult.getAsyncResult();
+        assertThat(mvcResult.getResponse().getContentAsByteArray()).isEqualTo(image);
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoImageRange() throws Exception {
+        // Initialize the database with a photo whose image is in the source directory
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null));
+        byte[] image = Files.readAllBytes(Paths.get("source", SOURCE_FILE_NAME + "." + SOURCE_TYPE));
+
+        // Get the second hundred bytes of the photo image
+        MvcResult mvcResult = restPhotoMockMvc.perform(get("/api/photos/{id}/image", photo.getId())
+            .header(HttpHeaders.RANGE, "bytes=100-199"))
+            .andExpect(request().asyncStarted())
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/" + image.length))
+            .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "100"))
+            .andReturn();
+
+        // Wait for the image to be streamed
+        mvcResult.getAsyncResult();
+        assertThat(mvcResult.getResponse().getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(image, 100, 200));
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoThumbnailNotModified() throws Exception {
+        // Initialize the database with a photo whose thumbnail is in the source directory
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH));
+
+        // Revalidate the cached thumbnail
+        restPhotoMockMvc.perform(get("/api/photos/{id}/thumbnail", photo.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"" + DEFAULT_CONTENT_HASH + "-thumbnail\""))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + DEFAULT_CONTENT_HASH + "-thumbnail\""))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"));
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoThumbnailVersion() throws Exception {
+        // Initialize the database with a photo whose thumbnail is in the source directory
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH));
+
+        // Get the thumbnail at the current version
+        restPhotoMockMvc.perform(get("/api/photos/{id}/thumbnail/{hash}", photo.getId(), DEFAULT_CONTENT_HASH))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"));
+
+        // Get the thumbnail at an old version
+        restPhotoMockMvc.perform(get("/api/photos/{id}/thumbnail/{hash}", photo.getId(), UPDATED_CONTENT_HASH))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getPendingPhotoThumbnail() throws Exception {
+        // Initialize the database with a photo whose thumbnail is not generated yet
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH)
+            .derivativeStatus(DerivativeStatus.PENDING));
+
+        // Get the thumbnail, the client is asked to retry later
+        restPhotoMockMvc.perform(get("/api/photos/{id}/thumbnail/{hash}", photo.getId(), DEFAULT_CONTENT_HASH))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, String.valueOf(applicationProperties.getDerivatives().getRetryAfterSeconds())))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"));
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoThumbnails() throws Exception {
+        // Initialize the database with a photo whose thumbnail is in the source directory, and a pending photo
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH));
+        Photo pending = photoRepository.saveAndFlush(createEntity(em).fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null)
+            .derivativeStatus(DerivativeStatus.PENDING));
+        byte[] thumbnail = Files.readAllBytes(Paths.get("source", SOURCE_FILE_NAME + "-thumbnail." + SOURCE_TYPE));
+
+        // Get the thumbnails, only the one generated has a part
+        MvcResult mvcResult = restPhotoMockMvc.perform(get("/api/photos/thumbnails")
+            .param("ids", photo.getId() + "," + pending.getId() + "," + Long.MAX_VALUE))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/mixed;boundary=")))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+            .andReturn();
+
+        mvcResult.getAsyncResult();
+        byte[] body = mvcResult.getResponse().getContentAsByteArray();
+        assertThat((long) body.length).isEqualTo(Long.parseLong(mvcResult.getResponse().getHeader(HttpHeaders.CONTENT_LENGTH)));
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        String boundary = MediaType.parseMediaType(mvcResult.getResponse().getContentType()).getParameter("boundary");
+        assertThat(text.split("--" + boundary + "\r\n")).hasSize(2);
+        assertThat(text).contains("Content-Location: /api/photos/" + photo.getId() + "/thumbnail/" + DEFAULT_CONTENT_HASH + "\r\n");
+        assertThat(text).contains("Content-Length: " + thumbnail.length + "\r\n\r\n"
+            + new String(thumbnail, StandardCharsets.ISO_8859_1) + "\r\n--" + boundary + "--\r\n");
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoThumbnailsWithTooManyIds() throws Exception {
+        String ids = LongStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        restPhotoMockMvc.perform(get("/api/photos/thumbnails").param("ids", ids))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoThumbnailsByTag() throws Exception {
+        // Initialize the database with a tagged photo whose thumbnail is in the source directory
+        Tag tag = tagRepository.saveAndFlush(new Tag().name("tag"));
+        photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH).getTags().add(tag);
+        photoRepository.saveAndFlush(photo);
+
+        // Get the thumbnails of the first page of the photos of the tag
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}/thumbnails?page=0&size=20", tag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/mixed;boundary=")))
+            .andExpect(header().string("X-Total-Count", "1"));
+
+        // A tag without photos has no thumbnails
+        Tag empty = tagRepository.saveAndFlush(new Tag().name("empty"));
+        restPhotoMockMvc.perform(get("/api/photos/tag/{id}/thumbnails", empty.getId()))
+            .andExpect(status().isNoContent())
+            .andExpect(header().string("X-Total-Count", "0"));
+    }
+
+    @Test
+    @Transactional
+    public void getPhotoDerivative() throws Exception {
+        // Initialize the database with a photo whose thumbnail is in the source directory
+        photoRepository.saveAndFlush(photo.fileName(SOURCE_FILE_NAME).type(SOURCE_TYPE).path(null).contentHash(DEFAULT_CONTENT_HASH));
+        int thumbnailSize = applicationProperties.getDerivatives().getThumbnailSize();
+
+        // Get the derivative of the thumbnail size
+        MvcResult mvcResult = restPhotoMockMvc.perform(get("/api/photos/{id}/derivatives/{size}", photo.getId(), thumbnailSize))
+            .andExpect(request().asyncStarted())
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+            .andExpect(header().string(HttpHeaders.ETAG, "\"" + DEFAULT_CONTENT_HASH + "-" + thumbnailSize + "\""))
+            .andReturn();
+        mvcResult.getAsyncResult();
+        assertThat(mvcResult.getResponse().getContentAsByteArray())
+            .isEqualTo(Files.readAllBytes(Paths.get("source", SOURCE_FILE_NAME + "-thumbnail." + SOURCE_TYPE)));
+
+        // Get a derivative of a size which is not configured
+        restPhotoMockMvc.perform(get("/api/photos/{id}/derivatives/{size}", photo.getId(), thumbnailSize + 1))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @Transactional
+    public void getNonExistingPhotoImage() throws Exception {
+        // Get the photo image
+        restPhotoMockMvc.perform(get("/api/photos/{id}/image", Long.MAX_VALUE))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     @Transactional
     public void updatePhoto() throws Exception {
@@ -2,9 +2,13 @@ package com.gparente.photoorganizer.web.rest;
 
 import com.gparente.photoorganizer.PhotoOrganizerApp;
 
+import com.gparente.photoorganizer.domain.Photo;
 import com.gparente.photoorganizer.domain.Tag;
 import com.gparente.photoorganizer.repository.PhotoRepository;
 import com.gparente.photoorganizer.repository.TagRepository;
+import com.gparente.photoorganizer.service.PageCountService;
+import com.gparente.photoorganizer.service.TagService;
+import com.gparente.photoorganizer.service.TagTreeService;
 import com.gparente.photoorganizer.web.rest.errors.ExceptionTranslator;
 
 import org.junit.Before;
@@ -26,6 +30,7 @@ import java.util.List;
 
 import static com.gparente.photoorganizer.web.rest.TestUtil.createFormattingConversionService;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasItem;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -52,7 +57,13 @@ public class TagResourceIntTest {
     private PhotoRepository photoRepository;
 
     @Autowired
-    private PhotoResource photoResource;
+    private TagService tagService;
+
+    @Autowired
+    private PageCountService pageCountService;
+
+    @Autowired
+    private TagTreeService tagTreeService;
 
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
@@ -73,7 +84,7 @@ public class TagResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final TagResource tagResource = new TagResource(tagRepository, photoRepository, photoResource);
+        final TagResource tagResource = new TagResource(tagRepository, tagService, pageCountService, tagTreeService);
         this.restTagMockMvc = MockMvcBuilders.standaloneSetup(tagResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -167,6 +178,26 @@ public class TagResourceIntTest {
             .andExpect(jsonPath("$.type").value(DEFAULT_TYPE.toString()));
     }
 
+    @Test
+    @Transactional
+    public void getSonsOfTag() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tag);
+        Tag son = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME).parentTag(tag));
+
+        restTagMockMvc.perform(get("/api/tags/{id}/sons", tag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(son.getId().intValue())))
+            .andExpect(jsonPath("$.[0].parentTag.id").value(tag.getId().intValue()));
+
+        // The tree is built again after a write
+        Tag otherSon = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME).parentTag(tag));
+
+        restTagMockMvc.perform(get("/api/tags/{id}/sons", tag.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].id").value(contains(son.getId().intValue(), otherSon.getId().intValue())));
+    }
+
     @Test
     @Transactional
     public void getNonExistingTag() throws Exception {
@@ -238,6 +269,52 @@ public class TagResourceIntTest {
         assertThat(tagList).hasSize(databaseSizeBeforeDelete - 1);
     }
 
+    @Test
+    @Transactional
+    public void deleteTagWithDescendants() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tag);
+        Tag son = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME).parentTag(tag));
+        Tag grandson = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME).parentTag(son));
+        Tag other = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME));
+        Photo onlyInSubtree = photoRepository.saveAndFlush(PhotoResourceIntTest.createEntity(em).addTags(grandson));
+        Photo alsoOutside = photoRepository.saveAndFlush(PhotoResourceIntTest.createEntity(em).addTags(son).addTags(other));
+        int databaseSizeBeforeDelete = tagRepository.findAll().size();
+        em.clear();
+
+        restTagMockMvc.perform(delete("/api/tags/{id}", tag.getId())
+            .accept(TestUtil.APPLICATION_JSON_UTF8))
+            .andExpect(status().isOk());
+        em.clear();
+
+        // The whole subtree is deleted, with the photos left without tags
+        List<Tag> tagList = tagRepository.findAll();
+        assertThat(tagList).hasSize(databaseSizeBeforeDelete - 3);
+        assertThat(photoRepository.findOne(onlyInSubtree.getId())).isNull();
+        assertThat(photoRepository.findOneWithEagerRelationships(alsoOutside.getId()).getTags()).containsExactly(other);
+    }
+
+    @Test
+    @Transactional
+    public void moveTagUnderItsDescendant() throws Exception {
+        // Initialize the database
+        tagRepository.saveAndFlush(tag);
+        Tag son = tagRepository.saveAndFlush(new Tag().name(UPDATED_NAME).parentTag(tag));
+
+        Tag updatedTag = tagRepository.findOne(tag.getId());
+        em.detach(updatedTag);
+        Tag sonReference = new Tag();
+        sonReference.setId(son.getId());
+        updatedTag.parentTag(sonReference);
+
+        restTagMockMvc.perform(put("/api/tags")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(updatedTag)))
+            .andExpect(status().isBadRequest());
+
+        assertThat(tagRepository.findAncestors(son.getId())).containsExactly(tag);
+    }
+
     @Test
     @Transactional
     public void equalsVerifier() throws Exception {
@@ -0,0 +1,235 @@
+package com.gparente.photoorganizer.web.rest.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Test class for the FileResponseUtil utility class.
+ *
+ * @see FileResponseUtil
+ */
+public class FileResponseUtilUnitTest {
+
+    private static final String ETAG = "\"0123456789abcdef\"";
+
+    private static final String CACHE_CONTROL = "no-cache, private";
+
+    private Path file;
+
+    private byte[] content;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("file-response-util", ".jpg");
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(file, content);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void streamWholeFile() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, null, CACHE_CONTROL, new HttpHeaders());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(content.length);
+        assertThat(response.getHeaders().getLastModified()).isEqualTo(Files.getLastModifiedTime(file).toMillis() / 1000 * 1000);
+        assertThat(response.getHeaders().getETag()).startsWith("W/\"");
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo(CACHE_CONTROL);
+        assertThat(writeBody(response)).isEqualTo(content);
+    }
+
+    @Test
+    public void streamSuffixRange() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=-100");
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 900-999/1000");
+        assertThat(writeBody(response)).isEqualTo(Arrays.copyOfRange(content, 900, 1000));
+    }
+
+    @Test
+    public void streamMultipleRanges() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=500-509,0-9,5-14");
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        MediaType contentType = response.getHeaders().getContentType();
+        assertThat(contentType.isCompatibleWith(MediaType.parseMediaType("multipart/byteranges"))).isTrue();
+        byte[] body = writeBody(response);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length);
+
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        String boundary = contentType.getParameter("boundary");
+        // The overlapping ranges 0-9 and 5-14 are merged in a single part
+        assertThat(text.split("--" + boundary + "\r\n")).hasSize(3);
+        assertThat(text).contains("Content-Range: bytes 0-14/1000");
+        assertThat(text).contains("Content-Range: bytes 500-509/1000");
+        assertThat(text).endsWith("\r\n--" + boundary + "--\r\n");
+    }
+
+    @Test
+    public void unsatisfiableRange() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=1000-1999");
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */1000");
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    public void ifRangeWithCurrentDate() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.setDate(HttpHeaders.IF_RANGE, Files.getLastModifiedTime(file).toMillis());
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(writeBody(response)).isEqualTo(Arrays.copyOfRange(content, 0, 100));
+    }
+
+    @Test
+    public void ifRangeWithOutdatedDate() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.setDate(HttpHeaders.IF_RANGE, Files.getLastModifiedTime(file).toMillis() - 60000);
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        // The file changed since the client got its first part, so the whole file is sent again
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(writeBody(response)).isEqualTo(content);
+    }
+
+    @Test
+    public void ifRangeWithCurrentETag() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-99");
+        requestHeaders.set(HttpHeaders.IF_RANGE, ETAG);
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+    }
+
+    @Test
+    public void ifNoneMatchWithCurrentETag() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch(Arrays.asList("\"other\"", "W/" + ETAG));
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(response.getBody()).isNull();
+    }
+
+    @Test
+    public void ifNoneMatchWithOutdatedETag() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"other\"");
+        // "If-None-Match" takes precedence over "If-Modified-Since"
+        requestHeaders.setIfModifiedSince(Files.getLastModifiedTime(file).toMillis());
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void ifModifiedSince() throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.setIfModifiedSince(lastModified);
+        assertThat(FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders).getStatusCode())
+            .isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        requestHeaders.setIfModifiedSince(lastModified - 60000);
+        assertThat(FileResponseUtil.streamFile(file, ETAG, CACHE_CONTROL, requestHeaders).getStatusCode())
+            .isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void streamBytesRange() throws IOException {
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=100-199");
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamBytes(
+            ByteBuffer.wrap(content).asReadOnlyBuffer(), MediaType.IMAGE_JPEG, lastModified, ETAG, CACHE_CONTROL, requestHeaders);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 100-199/1000");
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(writeBody(response)).isEqualTo(Arrays.copyOfRange(content, 100, 200));
+        // The body can be written again, the buffer given is not consumed
+        assertThat(writeBody(response)).isEqualTo(Arrays.copyOfRange(content, 100, 200));
+    }
+
+    @Test
+    public void streamParts() throws IOException {
+        HttpHeaders firstHeaders = new HttpHeaders();
+        firstHeaders.setContentType(MediaType.IMAGE_JPEG);
+        HttpHeaders secondHeaders = new HttpHeaders();
+        secondHeaders.set(HttpHeaders.CONTENT_LOCATION, "/second");
+
+        ResponseEntity<StreamingResponseBody> response = FileResponseUtil.streamParts(Arrays.asList(
+            new FileResponseUtil.Part(firstHeaders, ByteBuffer.wrap(content, 0, 10)),
+            new FileResponseUtil.Part(secondHeaders, ByteBuffer.wrap(content, 10, 5))), CACHE_CONTROL);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo(CACHE_CONTROL);
+        MediaType contentType = response.getHeaders().getContentType();
+        assertThat(contentType.isCompatibleWith(MediaType.parseMediaType("multipart/mixed"))).isTrue();
+        byte[] body = writeBody(response);
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length);
+
+        String boundary = contentType.getParameter("boundary");
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertThat(text).isEqualTo("\r\n--" + boundary + "\r\n"
+            + "Content-Type: image/jpeg\r\nContent-Length: 10\r\n\r\n" + new String(content, 0, 10, StandardCharsets.ISO_8859_1)
+            + "\r\n--" + boundary + "\r\n"
+            + "Content-Location: /second\r\nContent-Length: 5\r\n\r\n" + new String(content, 10, 5, StandardCharsets.ISO_8859_1)
+            + "\r\n--" + boundary + "--\r\n");
+    }
+
+    private byte[] writeBody(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}